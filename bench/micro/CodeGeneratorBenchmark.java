@@ -0,0 +1,51 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CodeGenerator.generate2Address alone: one "IA R0, $v$" per statement.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+@State(Scope.Thread)
+public class CodeGeneratorBenchmark {
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int statements;
+
+	private Expression[] operands;
+
+	@Setup(Level.Trial)
+	public void operands() {
+		SymbolTable symbols = new SymbolTable(SyntheticProgram.nullListing());
+		operands = new Expression[] { symbols.variable(symbols.checkIdentifier(new char[] { 'a' }, 0, 1)),
+				new LiteralExpression(20), symbols.variable(symbols.checkIdentifier(new char[] { 'b' }, 0, 1)) };
+	}
+
+	@Benchmark
+	public int generate2Address(final Throughput throughput) {
+		PrintWriter listing = SyntheticProgram.nullListing();
+		CodeGenerator codegen = new CodeGenerator(listing, new SymbolTable(listing));
+		TemporaryExpression register = codegen.getTemporary();
+		for (int i = 0; i < statements; ++i) {
+			codegen.generate2Address("IA", register, operands[i % operands.length]);
+		}
+		codegen.freeTemporary(register);
+		throughput.statements += statements;
+		return register.which();
+	}
+}
@@ -0,0 +1,33 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parser.systemGoal, including the semantic actions it drives, with the listing discarded.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+public class ParserBenchmark {
+	@Benchmark
+	public int parse(final ProgramState state, final Throughput throughput) {
+		PrintWriter listing = SyntheticProgram.nullListing();
+		TokenStream tokens = new TokenStream(state.program.reader(), listing);
+		SymbolTable idtable = new SymbolTable(listing);
+		CodeGenerator codegen = new CodeGenerator(listing, idtable);
+		SemanticActions semantic = new SemanticActions(listing, codegen, idtable);
+		Parser parser = new Parser(listing, tokens, idtable, semantic);
+		parser.systemGoal();
+		throughput.count(state.program);
+		return parser.errors();
+	}
+}
@@ -0,0 +1,27 @@
+package micro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The whole MicroGCLCompiler pipeline as wired by main. Compilations share no state, so
+// running with -t <threads> measures how the compiler scales across cores.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+public class PipelineBenchmark {
+	@Benchmark
+	public int compile(final ProgramState state, final Throughput throughput) {
+		int errors = MicroGCLCompiler.compile(state.program.reader(), SyntheticProgram.nullListing(), null);
+		throughput.count(state.program);
+		return errors;
+	}
+}
@@ -0,0 +1,30 @@
+package micro;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// ------------------------------ ProgramFile ----------------------------
+// The trial's synthetic program written to a temporary file, for the file input paths.
+@State(Scope.Benchmark)
+public class ProgramFile {
+	Path file;
+
+	@Setup(Level.Trial)
+	public void write(final ProgramState state) throws IOException {
+		file = Files.createTempFile("microgcl", ".gcl");
+		Files.writeString(file, state.program.source(), StandardCharsets.US_ASCII);
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		Files.deleteIfExists(file);
+	}
+}
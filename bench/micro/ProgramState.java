@@ -0,0 +1,25 @@
+package micro;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// ------------------------------ ProgramState ----------------------------
+// One synthetic program per trial, shared by every thread of a benchmark.
+@State(Scope.Benchmark)
+public class ProgramState {
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int statements;
+
+	@Param({ "1000" })
+	public int variables;
+
+	SyntheticProgram program;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		program = SyntheticProgram.generate(statements, variables, 42L);
+	}
+}
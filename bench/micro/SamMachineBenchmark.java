@@ -0,0 +1,120 @@
+package micro;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SamMachine.run over the compiled synthetic program ("instructions" is instructions/s)
+// against the same program translated to bytecode by SamCompiler, the cost of that
+// translation, and loading the program from SAM text against mapping its object file.
+// optimize compiles the program with the -O passes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+@State(Scope.Thread)
+public class SamMachineBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	public int statements;
+
+	@Param({ "false", "true" })
+	public boolean optimize;
+
+	private SamMachine machine;
+	private SamCode translated;
+	private long executed; // by one run: the synthetic program has no jumps
+	private Path listingFile;
+	private Path objectFile;
+	private PrintWriter output;
+	private IntSupplier input;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Execution {
+		public long instructions;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			instructions = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		SyntheticProgram program = SyntheticProgram.generate(statements, 1000, 42L);
+		Compiler compiler = optimize ? Compiler.optimizing() : new Compiler();
+		List<String> instructions = compiler.compile(program.source()).instructions();
+		machine = new SamMachine(instructions);
+		listingFile = Files.createTempFile("microgcl", ".sam");
+		Files.write(listingFile, instructions, StandardCharsets.ISO_8859_1);
+		objectFile = Files.createTempFile("microgcl", ".samo");
+		new SamAssembler(instructions).write(objectFile);
+		output = SyntheticProgram.nullListing();
+		input = new IntSupplier() {
+			public int getAsInt() {
+				return next++ & 0xff;
+			}
+
+			private int next = 1;
+		};
+		translated = machine.translate();
+		machine.run(input, output);
+		executed = machine.instructionsExecuted();
+	}
+
+	@Benchmark
+	public long run(final Execution execution) {
+		machine.run(input, output);
+		execution.instructions += machine.instructionsExecuted();
+		return machine.instructionsExecuted();
+	}
+
+	@Benchmark
+	public SamCode runTranslated(final Execution execution) {
+		translated.run(input, output);
+		execution.instructions += executed;
+		return translated;
+	}
+
+	@Benchmark
+	public SamCode translate() {
+		return machine.translate();
+	}
+
+	@Benchmark
+	public SamMachine loadText() throws IOException {
+		return SamMachine.load(listingFile);
+	}
+
+	@Benchmark
+	public SamMachine mapObject() throws IOException {
+		return SamMachine.map(objectFile);
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		Files.deleteIfExists(listingFile);
+		Files.deleteIfExists(objectFile);
+	}
+}
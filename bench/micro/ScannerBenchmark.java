@@ -0,0 +1,71 @@
+package micro;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Scanner.getNextToken alone: pull every token of the program through a TokenStream.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+public class ScannerBenchmark {
+	@Benchmark
+	public long scan(final ProgramState state, final Throughput throughput) {
+		long count = scanAll(state.program.reader());
+		throughput.count(state.program);
+		return count;
+	}
+
+	@Benchmark
+	public long scanFileReader(final ProgramState state, final ProgramFile source, final Throughput throughput) throws IOException {
+		try (Reader in = new FileReader(source.file.toFile())) {
+			long count = scanAll(in);
+			throughput.count(state.program);
+			return count;
+		}
+	}
+
+	@Benchmark
+	public long scanMappedFile(final ProgramState state, final ProgramFile source, final Throughput throughput) throws IOException {
+		try (Reader in = new MappedSourceReader(source.file)) {
+			long count = scanAll(in);
+			throughput.count(state.program);
+			return count;
+		}
+	}
+
+	// The source lexed ahead of the parser in one chunk per core; see TokenStream.
+	@Benchmark
+	public long scanParallel(final ProgramState state, final Throughput throughput) {
+		TokenStream tokens = new TokenStream(state.program.reader(), SyntheticProgram.nullListing(), new Diagnostics(),
+				new char[TokenStream.WINDOW_SIZE], Runtime.getRuntime().availableProcessors());
+		long count = scanAll(tokens);
+		tokens.close();
+		throughput.count(state.program);
+		return count;
+	}
+
+	private static long scanAll(final Reader in) {
+		return scanAll(new TokenStream(in, SyntheticProgram.nullListing()));
+	}
+
+	private static long scanAll(final TokenStream tokens) {
+		long count = 0;
+		while (tokens.kind() != Kind.EOF) {
+			tokens.advance();
+			count++;
+		}
+		return count;
+	}
+}
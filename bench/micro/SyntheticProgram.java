@@ -0,0 +1,83 @@
+package micro;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Random;
+
+// ------------------------------ SyntheticProgram ----------------------------
+// Machine-generated MicroGCL source of a given size, as produced by our program
+// generators: straight-line assignments, READs, WRITEs and SKIPs over a bounded
+// pool of variables.
+final class SyntheticProgram {
+	private SyntheticProgram(final String source, final int statements, final long tokens) {
+		this.source = source;
+		this.statements = statements;
+		this.tokens = tokens;
+	}
+
+	public static SyntheticProgram generate(final int statements, final int variables, final long seed) {
+		Random random = new Random(seed);
+		StringBuilder source = new StringBuilder(statements * 24 + 16);
+		source.append("BEGIN\n");
+		for (int i = 0; i < statements; ++i) {
+			String a = variable(random, variables);
+			String b = variable(random, variables);
+			String c = variable(random, variables);
+			source.append('\t');
+			switch (i % 8) {
+			case 0: source.append("READ ").append(a).append(';'); break;
+			case 1: source.append(a).append(" := ").append(b).append(" + ").append(random.nextInt(100)).append(';'); break;
+			case 2: source.append(a).append(" := ").append(b).append(" * ").append(c).append(" - 3;"); break;
+			case 3: source.append("WRITE ").append(a).append(", ").append(b).append(" + ").append(c).append(';'); break;
+			case 4: source.append(a).append(" := (").append(b).append(" - ").append(c).append(") * 2 + ").append(a).append(';'); break;
+			case 5: source.append("SKIP;"); break;
+			case 6: source.append("WRITE ").append(a).append(';'); break;
+			default: source.append(a).append(" := ").append(b).append(';'); break;
+			}
+			source.append('\n');
+		}
+		source.append("END.\n");
+		String text = source.toString();
+		return new SyntheticProgram(text, statements, countTokens(text));
+	}
+
+	private static String variable(final Random random, final int variables) {
+		return "v" + random.nextInt(variables);
+	}
+
+	private static long countTokens(final String source) {
+		TokenStream tokens = new TokenStream(new BufferedReader(new StringReader(source)), nullListing());
+		long count = 0;
+		while (tokens.kind() != Kind.EOF) {
+			tokens.advance();
+			count++;
+		}
+		return count;
+	}
+
+	public static PrintWriter nullListing() {
+		return new PrintWriter(Writer.nullWriter());
+	}
+
+	public BufferedReader reader() {
+		return new BufferedReader(new StringReader(source));
+	}
+
+	public String source() {
+		return source;
+	}
+
+	public int statements() {
+		return statements;
+	}
+
+	public long tokens() {
+		return tokens;
+	}
+
+	private final String source;
+	private final int statements;
+	private final long tokens;
+}
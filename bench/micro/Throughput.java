@@ -0,0 +1,28 @@
+package micro;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// ------------------------------ Throughput ----------------------------
+// Secondary results: JMH reports these as tokens/s and statements/s next to
+// the primary ops/s score. Run with "-prof gc" for the allocation rate.
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+	public long tokens;
+	public long statements;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		tokens = 0;
+		statements = 0;
+	}
+
+	void count(final SyntheticProgram program) {
+		tokens += program.tokens();
+		statements += program.statements();
+	}
+}
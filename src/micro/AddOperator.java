@@ -0,0 +1,17 @@
+package micro;
+
+// ------------------------------ AddOperator ----------------------------
+class AddOperator { // Typed enumeration.
+	private AddOperator(final String samCode) {
+		code = samCode;
+	}
+
+	public static final AddOperator PLUS = new AddOperator("IA");
+	public static final AddOperator MINUS = new AddOperator("IS");
+
+	public String samCode() {
+		return code;
+	}
+
+	private final String code;
+}
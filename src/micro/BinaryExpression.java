@@ -0,0 +1,64 @@
+package micro;
+
+// ------------------------------ BinaryExpression ----------------------------
+class BinaryExpression implements Expression { // An operator not yet lowered to code: Immutable
+	public BinaryExpression(final Expression left, final String opcode, final Expression right, final long mark) {
+		this(left, opcode, right, mark, false);
+	}
+
+	public BinaryExpression(final Expression left, final String opcode, final Expression right, final long mark,
+			final boolean rightFirst) {
+		this.left = left;
+		this.opcode = opcode;
+		this.right = right;
+		this.mark = mark;
+		this.rightFirst = rightFirst;
+		int leftNeed = left instanceof BinaryExpression ? ((BinaryExpression) left).registers() : 1;
+		if (!(right instanceof BinaryExpression)) {
+			registers = leftNeed; // A single right operand is used straight from memory or the literal.
+		} else if (rightFirst) {
+			registers = Math.max(((BinaryExpression) right).registers(), leftNeed + 1);
+		} else {
+			registers = Math.max(leftNeed, ((BinaryExpression) right).registers() + 1);
+		}
+	}
+
+	public String samCode() {
+		throw new IllegalStateException("Expression tree used before it was lowered: " + opcode);
+	}
+
+	public Expression left() {
+		return left;
+	}
+
+	public String opcode() {
+		return opcode;
+	}
+
+	public Expression right() {
+		return right;
+	}
+
+	public long mark() {
+		return mark;
+	}
+
+	public boolean rightFirst() { // Whether the right operand is computed before the left one.
+		return rightFirst;
+	}
+
+	public int registers() { // How many registers computing it takes, in that order, without spilling.
+		return registers;
+	}
+
+	public boolean commutative() {
+		return opcode.equals("IA") || opcode.equals("IM");
+	}
+
+	private final Expression left;
+	private final String opcode; // "IA", "IS", "IM" or "ID"
+	private final Expression right;
+	private final long mark; // Where in the listing the parser reduced it, see CodeBuffer.
+	private final boolean rightFirst;
+	private final int registers;
+}
@@ -0,0 +1,42 @@
+package micro;
+
+import java.util.ArrayDeque;
+
+// ------------------------------ BottomUpPass ----------------------------
+// An expression pass that rebuilds a tree operator by operator, children
+// first. The walk keeps its own stack, since a tree nests as deep as the
+// source's parentheses or operator chains, and either may run to thousands.
+abstract class BottomUpPass implements ExpressionPass {
+	public Expression rewrite(final Expression expression) {
+		ArrayDeque<Operands> pending = new ArrayDeque<Operands>();
+		Expression node = expression;
+		while (true) {
+			while (node instanceof BinaryExpression) {
+				pending.push(new Operands((BinaryExpression) node));
+				node = ((BinaryExpression) node).left();
+			}
+			Expression value = node;
+			while (!pending.isEmpty() && pending.peek().left != null) { // value is its right operand
+				Operands operands = pending.pop();
+				value = rebuild(operands.tree, operands.left, value);
+			}
+			if (pending.isEmpty()) {
+				return value;
+			}
+			pending.peek().left = value;
+			node = pending.peek().tree.right();
+		}
+	}
+
+	// The tree to use in place of tree, given its operands as already rewritten.
+	abstract Expression rebuild(BinaryExpression tree, Expression left, Expression right);
+
+	private static final class Operands {
+		Operands(final BinaryExpression tree) {
+			this.tree = tree;
+		}
+
+		final BinaryExpression tree;
+		Expression left; // Rewritten, once the walk has been down the left side
+	}
+}
@@ -0,0 +1,191 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ------------------------------ Branches ----------------------------
+// Simplifies the jumps an IF compiles to. A conditional jump after a compare
+// of two known values (literals, or registers loaded with them in the same
+// block) is dropped, or made a JMP with the code after it up to a label. A
+// jump to a label that leads straight to a JMP goes to where that JMP goes.
+// "Jcc A; JMP B; LABEL A", an IF arm with nothing in it, becomes the opposite
+// jump to B. Labels nothing jumps to are dropped, so Peephole can then remove
+// the arm no path reaches and DeadStores the compare no jump reads.
+class Branches implements CodePass {
+	public String run(final List<Instruction> code) {
+		int folded = fold(code);
+		int threaded = thread(code);
+		int inverted = invert(code);
+		dropUnusedLabels(code);
+		return "Branches: folded " + folded + ", threaded " + threaded + ", inverted " + inverted;
+	}
+
+	private static int fold(final List<Instruction> code) {
+		int folded = 0;
+		Map<String, Integer> known = new HashMap<String, Integer>(); // Registers holding known values
+		Integer condition = null; // sign of the last compare, when known
+		for (int at = 0; at < code.size(); ++at) {
+			Instruction instruction = code.get(at);
+			String opcode = instruction.opcode();
+			if (instruction.isCodeLabel() || instruction.isDirective()) {
+				known.clear();
+				condition = null;
+			} else if (instruction.isJump()) {
+				if (!opcode.equals("JMP") && condition != null) {
+					if (taken(opcode, condition)) {
+						replace(code, at, Instruction.jump("JMP", instruction.label()));
+						while (at + 1 < code.size() && !code.get(at + 1).isCodeLabel() && !code.get(at + 1).isDirective()) {
+							code.remove(at + 1); // Unreachable, and its jumps would keep their labels used.
+						}
+					} else {
+						code.remove(at--);
+					}
+					folded++;
+				}
+			} else if (instruction.register() != null && !opcode.equals("STO")) {
+				String register = instruction.register().samCode();
+				Integer left = known.get(register);
+				Integer right = valueOf(instruction.operand(), known);
+				if (opcode.equals("IC")) {
+					condition = left != null && right != null ? Integer.valueOf(Integer.compare(left, right)) : null;
+				} else {
+					Integer result = left == null || right == null ? null : evaluate(opcode, left, right);
+					if (opcode.equals("LD")) {
+						result = right;
+					}
+					if (result != null) {
+						known.put(register, result);
+					} else {
+						known.remove(register);
+					}
+				}
+			}
+		}
+		return folded;
+	}
+
+	private static Integer valueOf(final Expression operand, final Map<String, Integer> known) {
+		if (operand instanceof LiteralExpression) {
+			return ((LiteralExpression) operand).word();
+		}
+		return known.get(operand.samCode());
+	}
+
+	private static Integer evaluate(final String opcode, final int left, final int right) { // as SamMachine does
+		if (opcode.equals("IA")) {
+			return (int) (short) (left + right);
+		} else if (opcode.equals("IS")) {
+			return (int) (short) (left - right);
+		} else if (opcode.equals("IM")) {
+			return (int) (short) (left * right);
+		} else if (opcode.equals("ID") && right != 0) {
+			return (int) (short) (left / right);
+		}
+		return null;
+	}
+
+	private static boolean taken(final String jump, final int condition) {
+		if (jump.equals("JLT")) {
+			return condition < 0;
+		} else if (jump.equals("JLE")) {
+			return condition <= 0;
+		} else if (jump.equals("JEQ")) {
+			return condition == 0;
+		} else if (jump.equals("JNE")) {
+			return condition != 0;
+		} else if (jump.equals("JGE")) {
+			return condition >= 0;
+		}
+		return condition > 0; // JGT
+	}
+
+	private static int thread(final List<Instruction> code) {
+		Map<String, String> onward = new HashMap<String, String>(); // Label -> where the JMP right after it goes
+		for (int at = 0; at < code.size(); ++at) {
+			if (code.get(at).isCodeLabel()) {
+				int next = at + 1;
+				while (next < code.size() && code.get(next).isCodeLabel()) {
+					next++;
+				}
+				if (next < code.size() && code.get(next).opcode().equals("JMP")) {
+					onward.put(code.get(at).label(), code.get(next).label());
+				}
+			}
+		}
+		int threaded = 0;
+		for (int at = 0; at < code.size(); ++at) {
+			Instruction jump = code.get(at);
+			if (jump.isJump() && onward.containsKey(jump.label())) {
+				String target = jump.label();
+				Set<String> seen = new HashSet<String>(); // A JMP may lead back to itself.
+				while (onward.containsKey(target) && seen.add(target)) {
+					target = onward.get(target);
+				}
+				if (!target.equals(jump.label())) {
+					replace(code, at, Instruction.jump(jump.opcode(), target));
+					threaded++;
+				}
+			}
+		}
+		return threaded;
+	}
+
+	private static int invert(final List<Instruction> code) {
+		int inverted = 0;
+		for (int at = 0; at + 2 < code.size(); ++at) {
+			Instruction branch = code.get(at);
+			Instruction jump = code.get(at + 1);
+			if (branch.isJump() && !branch.opcode().equals("JMP") && jump.opcode().equals("JMP")
+					&& labelFollows(code, at + 2, branch.label())) {
+				replace(code, at, Instruction.jump(OPPOSITE.get(branch.opcode()), jump.label()));
+				code.remove(at + 1);
+				inverted++;
+			}
+		}
+		return inverted;
+	}
+
+	private static boolean labelFollows(final List<Instruction> code, int at, final String label) {
+		for (; at < code.size() && code.get(at).isCodeLabel(); ++at) {
+			if (code.get(at).label().equals(label)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void replace(final List<Instruction> code, final int at, final Instruction instruction) {
+		instruction.anchor = code.get(at).anchor; // Listed where the one it replaces was.
+		code.set(at, instruction);
+	}
+
+	private static void dropUnusedLabels(final List<Instruction> code) {
+		Set<String> targets = new HashSet<String>();
+		for (Instruction instruction : code) {
+			if (instruction.isJump()) {
+				targets.add(instruction.label());
+			}
+		}
+		List<Instruction> kept = new ArrayList<Instruction>(code.size());
+		for (Instruction instruction : code) {
+			if (!instruction.isCodeLabel() || targets.contains(instruction.label())) {
+				kept.add(instruction);
+			}
+		}
+		code.clear();
+		code.addAll(kept);
+	}
+
+	private static final Map<String, String> OPPOSITE = new HashMap<String, String>();
+	static {
+		String[][] pairs = { { "JLT", "JGE" }, { "JLE", "JGT" }, { "JEQ", "JNE" } };
+		for (String[] pair : pairs) {
+			OPPOSITE.put(pair[0], pair[1]);
+			OPPOSITE.put(pair[1], pair[0]);
+		}
+	}
+}
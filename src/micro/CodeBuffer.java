@@ -0,0 +1,211 @@
+package micro;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ------------------------------ CodeBuffer ----------------------------
+// Merges the generated code with the rest of the listing: the source echo, notes
+// and errors that the other phases write through listing(). Each instruction is
+// anchored to the number of listing characters written before it, which for an
+// expression tree is where the parser reduced it, so the listing reads exactly as
+// if the code had been written the moment it was generated. With no code passes
+// everything streams on to the listing file, except while an IF holds its code
+// for insert; otherwise the instructions are kept for optimize() and listed by
+// close(). The listing text waits for them in a temporary file once it passes
+// SPILL_SIZE, as it is about as long as the source.
+class CodeBuffer extends Writer {
+	public CodeBuffer(final PrintWriter out, final List<String> instructions, final PassPipeline passes) {
+		this.out = out;
+		this.instructions = instructions;
+		this.passes = passes;
+		this.code = passes.rewritesCode() ? new ArrayList<Instruction>() : null;
+	}
+
+	public PrintWriter listing() {
+		return listing;
+	}
+
+	public PassPipeline passes() {
+		return passes;
+	}
+
+	public long mark() {
+		return written;
+	}
+
+	public void add(final Instruction instruction, final long anchor) {
+		instruction.anchor = anchor;
+		if (code != null) {
+			code.add(instruction);
+		} else {
+			list(instruction);
+		}
+	}
+
+	public int size() { // Instructions kept so far
+		return code.size();
+	}
+
+	// Keeps the instructions from here on, until as many releases as holds, and
+	// returns where insert can put code here.
+	public int hold() {
+		if (code == null) {
+			code = new ArrayList<Instruction>();
+		}
+		holds++;
+		return code.size();
+	}
+
+	public void release() { // With no code passes, lists what the last release frees.
+		if (--holds == 0 && !passes.rewritesCode()) {
+			for (Instruction instruction : code) {
+				list(instruction);
+			}
+			code = null;
+		}
+	}
+
+	public void insert(final int position, final List<Instruction> instructions, final long anchor) {
+		for (Instruction instruction : instructions) {
+			instruction.anchor = anchor;
+		}
+		code.addAll(position, instructions);
+	}
+
+	public List<String> optimize() { // Runs the code passes over the whole program and returns their reports.
+		if (!passes.rewritesCode()) {
+			return Collections.<String>emptyList();
+		}
+		return passes.run(code);
+	}
+
+	public void write(final char[] text, final int offset, final int length) {
+		try {
+			if (spill != null) {
+				spill.write(text, offset, length);
+			} else {
+				pending.append(text, offset, length);
+				if (passes.rewritesCode() && pending.length() > SPILL_SIZE) {
+					spillFile = Files.createTempFile("microgcl", ".listing");
+					spill = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+					spill.append(pending);
+					pending.setLength(0);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not keep the listing text in " + spillFile, e);
+		}
+		written += length;
+	}
+
+	public void flush() { // Listing text waits for the code anchored before it; see close.
+	}
+
+	public void close() { // Lists the kept instructions and the remaining text.
+		try {
+			if (spill != null) {
+				spill.close();
+				spill = null;
+				spilled = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8);
+			}
+			if (code != null) {
+				for (Instruction instruction : code) {
+					list(instruction);
+				}
+				code.clear();
+			}
+			listText(written);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not list the text kept in " + spillFile, e);
+		} finally {
+			if (spillFile != null) {
+				discardSpill();
+			}
+		}
+	}
+
+	private void discardSpill() { // The temporary file goes, listed or not.
+		try {
+			if (spill != null) {
+				spill.close();
+			}
+			if (spilled != null) {
+				spilled.close();
+			}
+		} catch (IOException e) {
+			// Nothing more is read from it.
+		}
+		spillFile.toFile().delete();
+		spillFile = null;
+		spill = null;
+		spilled = null;
+	}
+
+	private void list(final Instruction instruction) {
+		listText(instruction.anchor);
+		String line = instruction.text();
+		out.println(line);
+		if (instructions != null) {
+			instructions.add(line);
+		}
+	}
+
+	private void listText(final long upTo) {
+		if (upTo <= listed) {
+			return;
+		}
+		if (spilled != null) {
+			listSpilled(upTo);
+			return;
+		}
+		int end = pendingStart + (int) (upTo - listed);
+		out.append(pending, pendingStart, end);
+		listed = upTo;
+		pendingStart = end;
+		if (pendingStart == pending.length()) {
+			pending.setLength(0);
+			pendingStart = 0;
+		}
+	}
+
+	private void listSpilled(final long upTo) {
+		char[] buffer = new char[8192];
+		try {
+			while (listed < upTo) {
+				int count = spilled.read(buffer, 0, (int) Math.min(buffer.length, upTo - listed));
+				if (count < 0) {
+					throw new IOException("The text ends early");
+				}
+				out.write(buffer, 0, count);
+				listed += count;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not list the text kept in " + spillFile, e);
+		}
+	}
+
+	private final PrintWriter out;
+	private final List<String> instructions; // Also collects the listed instructions, when not null.
+	private final PassPipeline passes;
+	private List<Instruction> code; // Kept for the code passes, or while held; null otherwise.
+	private int holds = 0;
+	private final PrintWriter listing = new PrintWriter(this);
+	private final StringBuilder pending = new StringBuilder(); // Listing text not yet written out,
+	private Path spillFile = null; // or, with code kept, in this file
+	private Writer spill = null; // while it is written
+	private Reader spilled = null; // and while it is listed.
+	private int pendingStart = 0;
+	private long written = 0; // Listing characters received
+	private long listed = 0; // and written out.
+	private static final int SPILL_SIZE = 1 << 20; // characters
+}
@@ -0,0 +1,559 @@
+package micro;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// ------- CodeGenerator -- See the SAM documentation ---------------------
+class CodeGenerator {
+	public CodeGenerator(final PrintWriter out, final SymbolTable symbolTable) {
+		this(new CodeBuffer(out, null, PassPipeline.NONE), symbolTable);
+	}
+
+	public CodeGenerator(final CodeBuffer code, final SymbolTable symbolTable) {
+		this.code = code;
+		this.out = code.listing();
+		this.symbolTable = symbolTable;
+		this.caching = code.passes().tunesGeneration();
+		for (int i = 0; i < TOTAL_REGISTERS; ++i) {
+			freeRegisters[i] = true;
+		}
+	}
+
+	// A free register holding no value, else the free one whose value was used
+	// longest ago, preferring those whose value memory already has.
+	public TemporaryExpression getTemporary() { // There are exactly 16 registers.
+		int register = 0;
+		while (register < TOTAL_REGISTERS && !(freeRegisters[register] && value[register] == NO_VALUE)) {
+			register++;
+		}
+		if (register == TOTAL_REGISTERS) {
+			boolean[] unsavedIn = onlyCopies();
+			for (int candidate = 0; candidate < TOTAL_REGISTERS; ++candidate) {
+				if (freeRegisters[candidate] && (register == TOTAL_REGISTERS || unsavedIn[register] && !unsavedIn[candidate]
+						|| unsavedIn[register] == unsavedIn[candidate] && lastUse[candidate] < lastUse[register])) {
+					register = candidate;
+				}
+			}
+		}
+		if (register == TOTAL_REGISTERS) {
+			throw new IllegalStateException("All " + TOTAL_REGISTERS + " registers are in use");
+		}
+		release(register);
+		value[register] = NO_VALUE;
+		freeRegisters[register] = false;
+		return new TemporaryExpression(register);
+	}
+
+	public TemporaryExpression loadRegister(final Expression expression) {
+		if (expression instanceof TemporaryExpression) {
+			return (TemporaryExpression) expression;
+		}
+		TemporaryExpression register = getTemporary();
+		generate2Address("LD", register, expression);
+		freeTemporary(expression);
+		return register;
+	}
+
+	// Runs the expression passes over a tree and generates its code, returning the
+	// register holding its value, or the expression itself if it is a single operand.
+	public Expression lower(final Expression expression) {
+		Expression tree = code.passes().rewrite(expression);
+		if (caching) {
+			if (lastValue > VALUE_LIMIT) { // Straight-line code long enough to fill the tables: start them again.
+				writeBackAll();
+				forgetValues();
+			}
+			numberTree(tree);
+		}
+		Expression result = generateTree(tree);
+		treeValues.clear();
+		return result;
+	}
+
+	// Post-order, in the order each node asks for (left first unless a pass chose
+	// otherwise), as the parser reduced the tree. Chains like a + b + c + ... nest
+	// to the left and parentheses to the right, either to any depth, so the walk
+	// keeps its own stack. When the second operand of a node needs more registers
+	// than are free, the value of the first is held in a spill cell meanwhile.
+	private Expression generateTree(final Expression expression) {
+		ArrayDeque<Operands> pending = new ArrayDeque<Operands>();
+		Expression node = expression;
+		while (true) {
+			TemporaryExpression reused = reuse(node);
+			while (reused == null && node instanceof BinaryExpression) {
+				BinaryExpression tree = (BinaryExpression) node;
+				pending.push(new Operands(tree));
+				node = tree.rightFirst() ? tree.right() : tree.left();
+				reused = reuse(node);
+			}
+			Expression value = reused != null ? reused : node;
+			node = null;
+			while (node == null) {
+				if (pending.isEmpty()) {
+					return value;
+				}
+				Operands operands = pending.peek();
+				BinaryExpression tree = operands.tree;
+				if (operands.first != null) { // value is the second operand
+					pending.pop();
+					value = tree.rightFirst() ? apply(tree, value, operands.first) : apply(tree, operands.first, value);
+					continue;
+				}
+				Expression second = tree.rightFirst() ? tree.left() : tree.right();
+				if (second instanceof BinaryExpression && value instanceof TemporaryExpression
+						&& ((BinaryExpression) second).registers() > freeCount()) {
+					value = spill((TemporaryExpression) value, tree.mark());
+				}
+				operands.first = value;
+				if (second instanceof BinaryExpression) {
+					node = second;
+				} else {
+					pending.pop();
+					value = tree.rightFirst() ? apply(tree, second, value) : apply(tree, value, second);
+				}
+			}
+		}
+	}
+
+	private static final class Operands { // A node of generateTree's walk
+		Operands(final BinaryExpression tree) {
+			this.tree = tree;
+		}
+
+		final BinaryExpression tree;
+		Expression first; // The value of the operand computed first, once it is
+	}
+
+	// Generates "left op right", leaving the value in a register.
+	private TemporaryExpression apply(final BinaryExpression tree, final Expression left, Expression right) {
+		long enclosing = anchor;
+		anchor = tree.mark(); // Where the one-pass compiler generated this node's code.
+		if (!(left instanceof TemporaryExpression) && freeCount() == 0) { // right holds the last register
+			if (tree.commutative()) {
+				generate2Address(tree.opcode(), (TemporaryExpression) right, left);
+				freeTemporary(left);
+				anchor = enclosing;
+				return (TemporaryExpression) right;
+			}
+			right = spill((TemporaryExpression) right, tree.mark());
+		}
+		TemporaryExpression register = loadRegister(left);
+		generate2Address(tree.opcode(), register, right);
+		freeTemporary(right);
+		anchor = enclosing;
+		return register;
+	}
+
+	private SpillExpression spill(final TemporaryExpression register, final long mark) {
+		SpillExpression cell = new SpillExpression(spilled++);
+		spillCells = Math.max(spillCells, spilled);
+		long enclosing = anchor;
+		anchor = mark;
+		generate2Address("STO", register, cell);
+		anchor = enclosing;
+		freeTemporary(register);
+		return cell;
+	}
+
+	private int freeCount() {
+		int count = 0;
+		for (boolean free : freeRegisters) {
+			if (free) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public long mark() {
+		return code.mark();
+	}
+
+	public void registerReport(final PrintStream console) { // console may be null
+		String report = "  --    Allocated registers:";
+		String finalMessage = " None";
+		int register = 0;
+		for(boolean free: freeRegisters){
+			if(!free){
+				report += " " + register;
+				finalMessage = " <- Find and fix.";				
+			}
+			register++;
+		}
+		report += finalMessage;
+		out.println(report);
+		if (console != null) {
+			console.println(report);
+		}
+	}
+
+	public void freeTemporary(final Expression expression) {
+		if (expression instanceof TemporaryExpression) {
+			freeRegisters[((TemporaryExpression) expression).which()] = true;
+		} else if (expression instanceof SpillExpression) { // Spill cells are taken and given back last in, first out.
+			spilled--;
+		}
+	}
+
+	public void generate0Address(final String opcode) {
+		if (opcode.equals("HALT")) { // Memory is never read again.
+			storesSaved += unsaved.size();
+			unsaved.clear();
+		}
+		emit(Instruction.zeroAddress(opcode));
+	}// Generate a 0 address SAM instruction like halt
+
+	public void generate1Address(final String opcode, final Expression arg) {
+		if (opcode.equals("RDI")) {
+			if (caching && arg instanceof IdExpression) {
+				if (unsaved.remove(((IdExpression) arg).symbol()) != null) {
+					storesSaved++;
+				}
+				setValue((IdExpression) arg, ++lastValue);
+			}
+			emit(Instruction.oneAddress(opcode, arg));
+		} else {
+			emit(Instruction.oneAddress(opcode, cachedOperand(arg)));
+		}
+	} // generate 1 address SAM instruction like rdi
+
+	public void generate2Address(final String opcode, final TemporaryExpression arg1, final Expression arg2) {
+		if (caching && opcode.equals("STO") && arg2 instanceof IdExpression) {
+			store(arg1.which(), (IdExpression) arg2);
+			return;
+		}
+		boolean changes = !opcode.equals("STO") && !opcode.equals("IC");
+		int result = NO_VALUE;
+		if (caching && changes) {
+			result = opcode.equals("LD") ? valueOf(arg2) : combine(opcode, value[arg1.which()], valueOf(arg2));
+			release(arg1.which());
+		}
+		emit(Instruction.twoAddress(opcode, arg1, cachedOperand(arg2)));
+		if (changes) {
+			value[arg1.which()] = result;
+			lastUse[arg1.which()] = ++uses;
+		}
+	}// generate a 2 address SAM instruction like ia
+
+	// ---- Register caching and value numbering ----
+	// With PassPipeline.tunesGeneration(), every value computed in straight-line
+	// code gets a number: a variable's contents, a literal, or an operator over
+	// two numbered values. Equal numbers are equal values. A register keeps its
+	// number after the statement using it frees it, until the register is taken
+	// again, so later operands read the register instead of memory, and a tree
+	// whose number a free register holds is taken from it instead of computed.
+	// A store waits in its register (unsaved) until memory must hold the value:
+	// before a jump or label, or when the last register holding it is changed.
+	// One overwritten first, or still waiting at HALT, is never made. Labels
+	// end what is known, and so does a statement once VALUE_LIMIT numbers are
+	// taken, so the numbers and the operator table stay small.
+
+	private Expression cachedOperand(final Expression operand) {
+		if (caching && operand instanceof IdExpression) {
+			int register = holding(valueOf(operand), false);
+			if (register >= 0) {
+				lastUse[register] = ++uses;
+				loadsSaved++;
+				return new TemporaryExpression(register);
+			}
+		}
+		return operand;
+	}
+
+	private TemporaryExpression reuse(final Expression expression) { // A free register holding the tree's value, taken, or null.
+		if (!(expression instanceof BinaryExpression) || !treeValues.containsKey(expression)) {
+			return null;
+		}
+		int register = holding(treeValues.get(expression), true);
+		if (register < 0) {
+			return null;
+		}
+		freeRegisters[register] = false;
+		lastUse[register] = ++uses;
+		expressionsReused++;
+		return new TemporaryExpression(register);
+	}
+
+	private void store(final int register, final IdExpression variable) {
+		if (value[register] == NO_VALUE) {
+			value[register] = ++lastValue;
+		}
+		lastUse[register] = ++uses;
+		if (valueOf(variable) == value[register]) { // Already the variable's value.
+			if (!unsaved.containsKey(variable.symbol())) {
+				storesSaved++;
+			}
+			return;
+		}
+		if (unsaved.put(variable.symbol(), variable) != null) {
+			storesSaved++;
+		}
+		setValue(variable, value[register]);
+	}
+
+	private void numberTree(final Expression root) { // Numbers every operator in the tree, children first.
+		ArrayDeque<Expression> pending = new ArrayDeque<Expression>();
+		List<BinaryExpression> trees = new ArrayList<BinaryExpression>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Expression node = pending.pop();
+			if (node instanceof BinaryExpression) {
+				trees.add((BinaryExpression) node);
+				pending.push(((BinaryExpression) node).left());
+				pending.push(((BinaryExpression) node).right());
+			}
+		}
+		for (int i = trees.size() - 1; i >= 0; --i) {
+			BinaryExpression tree = trees.get(i);
+			treeValues.put(tree, combine(tree.opcode(), valueOf(tree.left()), valueOf(tree.right())));
+		}
+	}
+
+	private int valueOf(final Expression operand) {
+		if (operand instanceof IdExpression) {
+			int symbol = ((IdExpression) operand).symbol();
+			if (symbol >= variableValue.length || variableValue[symbol] == NO_VALUE) { // What memory holds now.
+				setValue((IdExpression) operand, ++lastValue);
+			}
+			return variableValue[symbol];
+		} else if (operand instanceof LiteralExpression) {
+			return number(LITERAL, ((LiteralExpression) operand).word(), 0);
+		} else if (operand instanceof TemporaryExpression) {
+			return value[((TemporaryExpression) operand).which()];
+		} else if (operand instanceof BinaryExpression && treeValues.containsKey(operand)) {
+			return treeValues.get(operand);
+		}
+		return NO_VALUE;
+	}
+
+	private int combine(final String opcode, final int left, final int right) {
+		if (left == NO_VALUE || right == NO_VALUE) {
+			return NO_VALUE;
+		}
+		int operator = OPERATORS.indexOf(opcode);
+		boolean commutative = opcode.equals("IA") || opcode.equals("IM");
+		return commutative && right < left ? number(operator, right, left) : number(operator, left, right);
+	}
+
+	private int number(final int operator, final int left, final int right) {
+		Operation key = new Operation(operator, left, right);
+		Integer known = expressionValues.get(key);
+		if (known == null) {
+			known = ++lastValue;
+			expressionValues.put(key, known);
+		}
+		return known;
+	}
+
+	private static final class Operation { // An operator over two numbered values
+		Operation(final int operator, final int left, final int right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		public boolean equals(final Object other) {
+			if (!(other instanceof Operation)) {
+				return false;
+			}
+			Operation operation = (Operation) other;
+			return operator == operation.operator && left == operation.left && right == operation.right;
+		}
+
+		public int hashCode() {
+			return (operator * 31 + left) * 31 + right;
+		}
+
+		final int operator, left, right;
+	}
+
+	private int holding(final int number, final boolean freeOnly) {
+		if (number != NO_VALUE) {
+			for (int register = 0; register < TOTAL_REGISTERS; ++register) {
+				if (value[register] == number && (freeRegisters[register] || !freeOnly)) {
+					return register;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private IdExpression onlyCopy(final int register) { // An unsaved variable no other register holds.
+		if (value[register] == NO_VALUE) {
+			return null;
+		}
+		for (IdExpression variable : unsaved.values()) {
+			int number = variableValue[variable.symbol()];
+			if (number == value[register]) {
+				boolean elsewhere = false;
+				for (int other = 0; other < TOTAL_REGISTERS; ++other) {
+					elsewhere |= other != register && value[other] == number;
+				}
+				if (!elsewhere) {
+					return variable;
+				}
+			}
+		}
+		return null;
+	}
+
+	private boolean[] onlyCopies() { // Which registers onlyCopy finds a variable in.
+		boolean[] only = new boolean[TOTAL_REGISTERS];
+		for (IdExpression variable : unsaved.values()) {
+			int number = variableValue[variable.symbol()];
+			int holders = 0;
+			int holder = -1;
+			for (int register = 0; register < TOTAL_REGISTERS; ++register) {
+				if (value[register] == number) {
+					holders++;
+					holder = register;
+				}
+			}
+			if (holders == 1) {
+				only[holder] = true;
+			}
+		}
+		return only;
+	}
+
+	private void release(final int register) { // The register is about to change.
+		for (IdExpression variable = onlyCopy(register); variable != null; variable = onlyCopy(register)) {
+			writeBack(variable);
+		}
+	}
+
+	private void writeBack(final IdExpression variable) {
+		int register = holding(variableValue[variable.symbol()], false);
+		emit(Instruction.twoAddress("STO", new TemporaryExpression(register), variable));
+		unsaved.remove(variable.symbol());
+	}
+
+	private void writeBackAll() {
+		for (IdExpression variable : new ArrayList<IdExpression>(unsaved.values())) {
+			writeBack(variable);
+		}
+	}
+
+	private void setValue(final IdExpression variable, final int number) {
+		if (variable.symbol() >= variableValue.length) {
+			variableValue = Arrays.copyOf(variableValue, Math.max(2 * variableValue.length, variable.symbol() + 1));
+		}
+		variableValue[variable.symbol()] = number;
+	}
+
+	public String cacheReport() { // null unless caching
+		return caching ? "Register caching: loads " + loadsSaved + ", stores " + storesSaved
+				+ ", subexpressions " + expressionsReused : null;
+	}
+
+	public void generateVariables() { // generate code for the variable block at the end.
+		for(int symbol = 0; symbol < symbolTable.size(); ++symbol){
+			generateLabel(symbolTable.variable(symbol).samCode());
+			emit(Instruction.jump("SKIP", String.valueOf(INTEGER_SIZE)));
+		}
+		for (int cell = 0; cell < spillCells; ++cell) {
+			generateLabel(new SpillExpression(cell).samCode());
+			emit(Instruction.jump("SKIP", String.valueOf(INTEGER_SIZE)));
+		}
+	}
+	
+	public String generateLabel(){
+		currentLabel++;
+		return "LABEL"+currentLabel;
+	}
+	
+	public void generateJump(String jumpCode, String label){
+		writeBackAll();
+		if (jumpCode.equals("LABEL")) { // Reached from elsewhere too.
+			forgetValues();
+		}
+		emit(Instruction.jump(jumpCode, label));
+	}
+	
+	public void generateLabel(final String labelValue){
+		emit(Instruction.dataLabel(labelValue));
+	}
+
+	private void forgetValues() {
+		Arrays.fill(value, NO_VALUE);
+		Arrays.fill(variableValue, NO_VALUE);
+		expressionValues.clear();
+		lastValue = NO_VALUE;
+	}
+
+	// ---- Dispatch ----
+	// The guards of an IF that may choose its arm by a search are tested by code
+	// generated at the IF's end, when all of them are known. That code goes in
+	// where the first guard was parsed, or each guard's test where it was, after
+	// the arm's label: memory is up to date there and nothing is known. The code
+	// buffer keeps the IF's code until then, with or without code passes.
+
+	public int dispatchPoint() { // Where the dispatch goes in the kept code
+		writeBackAll();
+		forgetValues();
+		return code.hold();
+	}
+
+	public int armPoint() { // Where an arm's test goes, after its label
+		return code.size();
+	}
+
+	public void startDispatch() { // Code generated until endDispatch goes in at the dispatch point.
+		writeBackAll();
+		forgetValues();
+		diverted = new ArrayList<Instruction>();
+	}
+
+	public void endDispatch(final int position, final long listedAt) {
+		forgetValues();
+		code.insert(position, diverted, listedAt);
+		diverted = null;
+	}
+
+	public void endDispatches() { // The IF's code goes on to the listing, if nothing else keeps it.
+		code.release();
+	}
+
+	private void emit(final Instruction instruction) {
+		if (diverted != null) {
+			diverted.add(instruction);
+		} else {
+			code.add(instruction, anchor < 0 ? code.mark() : anchor);
+		}
+	}
+
+	private final CodeBuffer code;
+	private final PrintWriter out;
+	static final int TOTAL_REGISTERS = 16;
+	static final int INTEGER_SIZE = 2;
+	private final boolean freeRegisters[] = new boolean[TOTAL_REGISTERS];
+	private final SymbolTable symbolTable;
+	private int currentLabel = -1;
+	private long anchor = -1; // Listing position for the instructions being generated, -1 for the current one.
+	private int spilled = 0; // Spill cells in use
+	private int spillCells = 0; // and the most ever used at once.
+	private final boolean caching;
+	private List<Instruction> diverted = null; // Dispatch code being generated
+	private static final int NO_VALUE = 0;
+	private static final String OPERATORS = "IA IS IM ID"; // Numbered by position; LITERAL numbers a literal's value.
+	private static final int LITERAL = OPERATORS.length() + 1;
+	private final int value[] = new int[TOTAL_REGISTERS]; // Number of the value each register holds
+	private final long lastUse[] = new long[TOTAL_REGISTERS];
+	private int variableValue[] = new int[64]; // by symbol
+	private final HashMap<Operation, Integer> expressionValues = new HashMap<Operation, Integer>();
+	private final IdentityHashMap<Expression, Integer> treeValues = new IdentityHashMap<Expression, Integer>(); // of the tree being lowered
+	private final LinkedHashMap<Integer, IdExpression> unsaved = new LinkedHashMap<Integer, IdExpression>(); // Variables memory lags, by symbol
+	private int lastValue = NO_VALUE;
+	private static final int VALUE_LIMIT = 1 << 16;
+	private long uses = 0;
+	private int loadsSaved = 0; // Memory reads and writes the cache made unnecessary,
+	private int storesSaved = 0;
+	private int expressionsReused = 0; // and trees not computed again.
+}
@@ -0,0 +1,8 @@
+package micro;
+
+import java.util.List;
+
+// ------------------------------ CodePass ----------------------------
+interface CodePass { // Rewrites the instruction list in place; new instructions take the anchor of those they replace.
+	public abstract String run(List<Instruction> code); // Returns a line for the listing, or null.
+}
@@ -0,0 +1,50 @@
+package micro;
+
+import java.util.Collections;
+import java.util.List;
+
+// ------------------------------ CompilationResult ----------------------------
+// What Compiler.compile produces: the SAM code on its own, the full listing (the
+// code interleaved with the echoed source, as written to a codefile) and the errors.
+public final class CompilationResult {
+	CompilationResult(final List<String> instructions, final String listing, final List<Diagnostic> diagnostics,
+			final boolean abandoned) {
+		this.instructions = Collections.unmodifiableList(instructions);
+		this.listing = listing;
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+		this.abandoned = abandoned;
+	}
+
+	public List<String> instructions() { // One SAM line each: instructions, labels and SKIP cells.
+		return instructions;
+	}
+
+	public String code() {
+		StringBuilder code = new StringBuilder(instructions.size() * 20);
+		for (String instruction : instructions) {
+			code.append(instruction).append('\n');
+		}
+		return code.toString();
+	}
+
+	public String listing() {
+		return listing;
+	}
+
+	public List<Diagnostic> diagnostics() {
+		return diagnostics;
+	}
+
+	public boolean succeeded() {
+		return !abandoned && diagnostics.isEmpty();
+	}
+
+	public boolean abandoned() { // Compilation stopped at a match error.
+		return abandoned;
+	}
+
+	private final List<String> instructions;
+	private final String listing;
+	private final List<Diagnostic> diagnostics;
+	private final boolean abandoned;
+}
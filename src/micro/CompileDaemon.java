@@ -0,0 +1,163 @@
+package micro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ------------------------------ CompileDaemon ----------------------------
+// A resident compiler: "-daemon <endpoint>" keeps one warmed-up JVM serving
+// compile requests, and "-client <endpoint> <source> <listing>" stands in for the
+// usual command line. The endpoint is a loopback port number or the path of a
+// Unix-domain socket.
+//
+// A connection carries any number of requests, one after the other:
+//   request:  int length, length bytes of ASCII source
+//   response: int errors (-1 if the compilation was abandoned),
+//             int length, length bytes of listing (the SAM code and the source echo)
+// A request the daemon cannot serve gets errors = FAILED and the reason in place
+// of the listing. A length out of range also ends the connection, as what
+// follows it cannot be trusted to be the next request.
+class CompileDaemon {
+	public CompileDaemon(final String endpoint) {
+		this(endpoint, PassPipeline.NONE);
+	}
+
+	public CompileDaemon(final String endpoint, final PassPipeline passes) { // passes: as for Compiler
+		this.endpoint = endpoint;
+		this.compiler = new Compiler(passes);
+	}
+
+	public void serve() throws IOException {
+		ServerSocketChannel server;
+		if (isPort(endpoint)) {
+			server = ServerSocketChannel.open(StandardProtocolFamily.INET);
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(endpoint)));
+		} else {
+			Path socket = Paths.get(endpoint);
+			Files.deleteIfExists(socket);
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(socket));
+			socket.toFile().deleteOnExit();
+		}
+		System.out.println("MicroGCL daemon listening on " + server.getLocalAddress());
+		while (true) {
+			final SocketChannel client = server.accept();
+			workers.execute(new Runnable() {
+				public void run() {
+					serve(client);
+				}
+			});
+		}
+	}
+
+	private void serve(final SocketChannel client) {
+		try (SocketChannel channel = client;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					return; // The client hung up between requests.
+				}
+				if (length < 0 || length > MAX_SOURCE_LENGTH) {
+					reply(out, FAILED, "Source length " + length + " out of range 0.." + MAX_SOURCE_LENGTH);
+					return;
+				}
+				byte[] source = new byte[length];
+				in.readFully(source);
+				CompilationResult result;
+				try {
+					result = compiler.compile(
+							new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.ISO_8859_1));
+				} catch (RuntimeException | StackOverflowError e) { // Fail this request, not the connection.
+					reply(out, FAILED, "Compiler failure: " + e);
+					continue;
+				}
+				reply(out, result.abandoned() ? -1 : result.diagnostics().size(), result.listing());
+			}
+		} catch (IOException e) {
+			System.out.println("Connection dropped: " + e);
+		}
+	}
+
+	private static void reply(final DataOutputStream out, final int errors, final String listing) throws IOException {
+		byte[] bytes = listing.getBytes(StandardCharsets.ISO_8859_1);
+		out.writeInt(errors);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		out.flush();
+	}
+
+	// Sends one source file to a running daemon and writes the listing it returns.
+	// Returns the error count, -1 if the compilation was abandoned; throws
+	// IOException with the daemon's reason if it could not compile it.
+	public static int compileRemote(final String endpoint, final Path source, final Path listing) throws IOException {
+		SocketAddress address = isPort(endpoint)
+				? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(endpoint))
+				: UnixDomainSocketAddress.of(endpoint);
+		try (SocketChannel channel = SocketChannel.open(address);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+			byte[] program = Files.readAllBytes(source);
+			if (program.length > MAX_SOURCE_LENGTH) {
+				throw new IOException(source + " is longer than the daemon takes (" + MAX_SOURCE_LENGTH + " bytes)");
+			}
+			out.writeInt(program.length);
+			out.write(program);
+			out.flush();
+			int errors = in.readInt();
+			int length = in.readInt();
+			if (length < 0) {
+				throw new IOException("Bad reply length " + length);
+			}
+			byte[] result = new byte[length];
+			in.readFully(result);
+			if (errors == FAILED) {
+				throw new IOException("Daemon error: " + new String(result, StandardCharsets.ISO_8859_1));
+			}
+			Files.write(listing, result);
+			return errors;
+		}
+	}
+
+	private static boolean isPort(final String endpoint) {
+		return endpoint.matches("[0-9]+");
+	}
+
+	// One virtual thread per request where the runtime has them (Java 21 on),
+	// otherwise a cached pool of platform threads.
+	private static ExecutorService newWorkers() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private final String endpoint;
+	private final Compiler compiler;
+	private final ExecutorService workers = newWorkers();
+	static final int FAILED = -2; // errors in a reply to a request the daemon could not compile
+	static final int MAX_SOURCE_LENGTH = 1 << 27; // Bytes in one request, well past any real program
+}
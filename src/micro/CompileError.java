@@ -0,0 +1,11 @@
+package micro;
+
+// ------------------------------ CompileError -----------------------------
+// Thrown when a compilation cannot continue. The message is already in the listing.
+class CompileError extends RuntimeException {
+	public CompileError(final String message) {
+		super(message);
+	}
+
+	private static final long serialVersionUID = 1L;
+}
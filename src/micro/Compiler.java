@@ -0,0 +1,94 @@
+package micro;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// ------------------------------ Compiler -------------------------------
+// The compiler as a library: source in, CompilationResult out, with no files and
+// no console. A Compiler may be shared by any number of threads; the scanner
+// window and listing buffer of finished compilations are pooled and reused.
+public class Compiler {
+	public Compiler() {
+		this(PassPipeline.NONE);
+	}
+
+	Compiler(final PassPipeline passes) { // The optimizations every compilation runs.
+		this.passes = passes;
+	}
+
+	public static Compiler optimizing() { // Runs the -O passes.
+		return new Compiler(PassPipeline.standard());
+	}
+
+	public CompilationResult compile(final CharSequence source) {
+		return compile(new CharSequenceReader(source));
+	}
+
+	public CompilationResult compile(final Reader source) {
+		Workspace workspace = workspaces.poll();
+		if (workspace == null) {
+			workspace = new Workspace();
+		}
+		try {
+			workspace.listing.getBuffer().setLength(0);
+			Diagnostics diagnostics = new Diagnostics();
+			List<String> instructions = new ArrayList<String>();
+			boolean abandoned = false;
+			try {
+				MicroGCLCompiler.compile(source, workspace.listingFile, null, diagnostics, instructions, workspace.window, passes);
+			} catch (CompileError e) {
+				abandoned = true;
+			}
+			workspace.listingFile.flush();
+			return new CompilationResult(instructions, workspace.listing.toString(), diagnostics.reported(), abandoned);
+		} finally {
+			if (workspace.listing.getBuffer().capacity() <= MAX_POOLED_LISTING) {
+				workspaces.offer(workspace);
+			}
+		}
+	}
+
+	private static final class Workspace {
+		final char[] window = new char[TokenStream.WINDOW_SIZE];
+		final StringWriter listing = new StringWriter(TokenStream.WINDOW_SIZE);
+		final PrintWriter listingFile = new PrintWriter(listing);
+	}
+
+	private final PassPipeline passes;
+	private final ConcurrentLinkedQueue<Workspace> workspaces = new ConcurrentLinkedQueue<Workspace>();
+	private static final int MAX_POOLED_LISTING = 1 << 24; // Let the odd huge listing buffer go.
+}
+
+// Reads a CharSequence in bulk, without copying it into a String first.
+class CharSequenceReader extends Reader {
+	public CharSequenceReader(final CharSequence source) {
+		this.source = source;
+	}
+
+	public int read(final char[] buffer, final int offset, final int length) throws IOException {
+		if (position >= source.length()) {
+			return -1;
+		}
+		int count = Math.min(length, source.length() - position);
+		if (source instanceof String) {
+			((String) source).getChars(position, position + count, buffer, offset);
+		} else {
+			for (int i = 0; i < count; ++i) {
+				buffer[offset + i] = source.charAt(position + i);
+			}
+		}
+		position += count;
+		return count;
+	}
+
+	public void close() {
+	}
+
+	private final CharSequence source;
+	private int position = 0;
+}
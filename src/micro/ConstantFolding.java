@@ -0,0 +1,64 @@
+package micro;
+
+import java.util.ArrayDeque;
+
+// ------------------------------ ConstantFolding ----------------------------
+// Evaluates operators on two literals at compile time, with SAM's 16-bit
+// words and arithmetic, and drops identities: x + 0, 0 + x, x - 0, x * 1, 1 * x, x / 1.
+// x * 0 and 0 * x become 0 unless x could divide by zero, and a division by a
+// literal 0 is left for the machine to trap at run time.
+class ConstantFolding extends BottomUpPass {
+	Expression rebuild(final BinaryExpression tree, final Expression left, final Expression right) {
+		String opcode = tree.opcode();
+		if (left instanceof LiteralExpression && right instanceof LiteralExpression) {
+			int a = ((LiteralExpression) left).word();
+			int b = ((LiteralExpression) right).word();
+			if (opcode.equals("IA")) {
+				return new LiteralExpression((short) (a + b));
+			} else if (opcode.equals("IS")) {
+				return new LiteralExpression((short) (a - b));
+			} else if (opcode.equals("IM")) {
+				return new LiteralExpression((short) (a * b));
+			} else if (b != 0) {
+				return new LiteralExpression((short) (a / b));
+			}
+		} else if (isLiteral(right, 0) && (opcode.equals("IA") || opcode.equals("IS"))) {
+			return left;
+		} else if (isLiteral(left, 0) && opcode.equals("IA")) {
+			return right;
+		} else if (isLiteral(right, 1) && (opcode.equals("IM") || opcode.equals("ID"))) {
+			return left;
+		} else if (isLiteral(left, 1) && opcode.equals("IM")) {
+			return right;
+		} else if (opcode.equals("IM") && (isLiteral(right, 0) && !mayTrap(left) || isLiteral(left, 0) && !mayTrap(right))) {
+			return new LiteralExpression(0);
+		}
+		if (left == tree.left() && right == tree.right()) {
+			return tree;
+		}
+		return new BinaryExpression(left, opcode, right, tree.mark());
+	}
+
+	private static boolean isLiteral(final Expression expression, final int value) {
+		return expression instanceof LiteralExpression && ((LiteralExpression) expression).word() == value;
+	}
+
+	// Whether evaluating expression could stop the program: a division by anything but a nonzero literal.
+	private static boolean mayTrap(final Expression expression) {
+		ArrayDeque<Expression> pending = new ArrayDeque<Expression>();
+		pending.push(expression);
+		while (!pending.isEmpty()) {
+			Expression node = pending.pop();
+			if (node instanceof BinaryExpression) {
+				BinaryExpression tree = (BinaryExpression) node;
+				if (tree.opcode().equals("ID") && !(tree.right() instanceof LiteralExpression
+						&& ((LiteralExpression) tree.right()).word() != 0)) {
+					return true;
+				}
+				pending.push(tree.left());
+				pending.push(tree.right());
+			}
+		}
+		return false;
+	}
+}
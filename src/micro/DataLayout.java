@@ -0,0 +1,56 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ------------------------------ DataLayout ----------------------------
+// Lays out the data section after the code: a cell no instruction names
+// any more is dropped, and the rest are ordered by how many instructions
+// name them, most first, so the busiest cells sit together at the start of
+// memory. Cells named equally often keep their order.
+class DataLayout implements CodePass {
+	public String run(final List<Instruction> code) {
+		int data = 0;
+		while (data < code.size() && !code.get(data).isDirective()) {
+			data++;
+		}
+		final Map<String, Integer> uses = new HashMap<String, Integer>();
+		for (int at = 0; at < data; ++at) {
+			Expression operand = code.get(at).operand();
+			if (operand != null && operand.samCode().startsWith("$")) {
+				Integer count = uses.get(operand.samCode());
+				uses.put(operand.samCode(), count == null ? 1 : count + 1);
+			}
+		}
+		List<List<Instruction>> cells = new ArrayList<List<Instruction>>(); // Each a data label and its SKIP
+		List<Instruction> cell = null;
+		for (int at = data; at < code.size(); ++at) {
+			if (code.get(at).opcode().equals("LABEL")) {
+				cell = new ArrayList<Instruction>();
+				cells.add(cell);
+			}
+			cell.add(code.get(at));
+		}
+		int before = cells.size();
+		List<List<Instruction>> kept = new ArrayList<List<Instruction>>();
+		for (List<Instruction> each : cells) {
+			if (uses.containsKey(each.get(0).label())) {
+				kept.add(each);
+			}
+		}
+		Collections.sort(kept, new Comparator<List<Instruction>>() { // stable
+			public int compare(final List<Instruction> a, final List<Instruction> b) {
+				return uses.get(b.get(0).label()) - uses.get(a.get(0).label());
+			}
+		});
+		code.subList(data, code.size()).clear();
+		for (List<Instruction> each : kept) {
+			code.addAll(each);
+		}
+		return "Data layout: cells " + kept.size() + " of " + before;
+	}
+}
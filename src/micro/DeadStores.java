@@ -0,0 +1,212 @@
+package micro;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ------------------------------ DeadStores ----------------------------
+// Removes stores, and register instructions, whose result nothing reads
+// again. Liveness of memory cells, registers and the condition is found
+// backwards over the basic blocks: code between labels and jumps. Only
+// instructions without other effects go, so RDI, WRI and ID (which may stop
+// the program) stay. An instruction that goes uses nothing, so the operands
+// of dead code are dead too and one solution finds whole dead chains. Cells,
+// registers and the condition are numbered once and live sets are BitSets.
+class DeadStores implements CodePass {
+	public String run(final List<Instruction> code) {
+		Locations locations = new Locations(code);
+		List<Block> blocks = blocks(code);
+		solve(locations, blocks);
+		int stores = 0;
+		int others = 0;
+		for (Block block : blocks) {
+			BitSet live = liveOut(block);
+			for (int at = block.end - 1; at >= block.start; --at) {
+				if (!locations.transfer(at, live)) {
+					if (code.get(at).opcode().equals("STO")) {
+						stores++;
+					} else {
+						others++;
+					}
+					code.set(at, null);
+				}
+			}
+		}
+		code.removeAll(Collections.singleton(null));
+		return "Dead stores: stores " + stores + ", others " + others;
+	}
+
+	static final class Block {
+		Block(final int start) {
+			this.start = start;
+		}
+
+		final int start;
+		int end; // exclusive
+		final List<Block> successors = new ArrayList<Block>();
+		final List<Block> predecessors = new ArrayList<Block>();
+		BitSet liveIn = new BitSet();
+		boolean queued;
+	}
+
+	// Splits the code before each label and after each jump or HALT. The data section is left out.
+	private static List<Block> blocks(final List<Instruction> code) {
+		List<Block> blocks = new ArrayList<Block>();
+		Map<String, Block> labelled = new HashMap<String, Block>();
+		Block block = null;
+		for (int at = 0; at < code.size() && !code.get(at).isDirective(); ++at) {
+			Instruction instruction = code.get(at);
+			if (block == null || instruction.isCodeLabel()) {
+				block = new Block(at);
+				blocks.add(block);
+			}
+			if (instruction.isCodeLabel()) {
+				labelled.put(instruction.label(), block);
+			}
+			block.end = at + 1;
+			if (instruction.isJump() || instruction.opcode().equals("HALT")) {
+				block = null;
+			}
+		}
+		for (int index = 0; index < blocks.size(); ++index) {
+			Block from = blocks.get(index);
+			Instruction last = code.get(from.end - 1);
+			if (last.isJump() && labelled.containsKey(last.label())) {
+				link(from, labelled.get(last.label()));
+			}
+			if (!last.opcode().equals("JMP") && !last.opcode().equals("HALT") && index + 1 < blocks.size()) {
+				link(from, blocks.get(index + 1));
+			}
+		}
+		return blocks;
+	}
+
+	private static void link(final Block from, final Block to) {
+		from.successors.add(to);
+		to.predecessors.add(from);
+	}
+
+	// A worklist, last block first: a block is visited again only when a successor's live-in grew.
+	private static void solve(final Locations locations, final List<Block> blocks) {
+		ArrayDeque<Block> work = new ArrayDeque<Block>();
+		for (Block block : blocks) {
+			work.push(block);
+			block.queued = true;
+		}
+		while (!work.isEmpty()) {
+			Block block = work.pop();
+			block.queued = false;
+			BitSet live = liveOut(block);
+			for (int at = block.end - 1; at >= block.start; --at) {
+				locations.transfer(at, live);
+			}
+			if (!live.equals(block.liveIn)) {
+				block.liveIn = live;
+				for (Block predecessor : block.predecessors) {
+					if (!predecessor.queued) {
+						work.push(predecessor);
+						predecessor.queued = true;
+					}
+				}
+			}
+		}
+	}
+
+	private static BitSet liveOut(final Block block) {
+		BitSet live = new BitSet();
+		for (Block successor : block.successors) {
+			live.or(successor.liveIn);
+		}
+		return live;
+	}
+
+	// What each instruction defines and uses, as location numbers; 0 is the condition.
+	private static final class Locations {
+		Locations(final List<Instruction> code) {
+			defines = new int[code.size()];
+			uses = new int[code.size()][];
+			removable = new boolean[code.size()];
+			for (int at = 0; at < code.size(); ++at) {
+				Instruction instruction = code.get(at);
+				String opcode = instruction.opcode();
+				defines[at] = NONE;
+				uses[at] = NOTHING;
+				if (instruction.isCodeLabel() || instruction.isDirective()) {
+					continue;
+				}
+				if (opcode.equals("HALT")) {
+					defines[at] = ALL;
+				} else if (instruction.isJump()) {
+					if (!opcode.equals("JMP")) {
+						uses[at] = new int[] { CONDITION };
+					}
+				} else if (opcode.equals("STO") || opcode.equals("RDI")) {
+					defines[at] = number(instruction.operand());
+					if (instruction.register() != null) {
+						uses[at] = new int[] { number(instruction.register()) };
+					}
+				} else if (instruction.register() != null) { // LD, IA, IS, IM, ID, IC
+					defines[at] = opcode.equals("IC") ? CONDITION : number(instruction.register());
+					int operand = number(instruction.operand());
+					if (opcode.equals("LD")) {
+						uses[at] = operand == NONE ? NOTHING : new int[] { operand };
+					} else {
+						int register = number(instruction.register());
+						uses[at] = operand == NONE ? new int[] { register } : new int[] { register, operand };
+					}
+				} else if (instruction.operand() != null) { // WRI
+					int operand = number(instruction.operand());
+					uses[at] = operand == NONE ? NOTHING : new int[] { operand };
+				}
+				removable[at] = REMOVABLE.contains(opcode);
+			}
+		}
+
+		// What is live before the instruction at, from what is live after it; false if it is dead.
+		boolean transfer(final int at, final BitSet live) {
+			int defined = defines[at];
+			if (defined == ALL) {
+				live.clear();
+				return true;
+			}
+			if (removable[at] && !live.get(defined)) {
+				return false;
+			}
+			if (defined != NONE) {
+				live.clear(defined);
+			}
+			for (int used : uses[at]) {
+				live.set(used);
+			}
+			return true;
+		}
+
+		private int number(final Expression location) {
+			if (location instanceof LiteralExpression) {
+				return NONE;
+			}
+			Integer number = numbers.get(location.samCode());
+			if (number == null) {
+				number = numbers.size() + 1;
+				numbers.put(location.samCode(), number);
+			}
+			return number;
+		}
+
+		private final Map<String, Integer> numbers = new HashMap<String, Integer>();
+		private final int[] defines;
+		private final int[][] uses;
+		private final boolean[] removable;
+	}
+
+	private static final Set<String> REMOVABLE = new HashSet<String>(Arrays.asList("LD", "IA", "IS", "IM", "IC", "STO"));
+	private static final int CONDITION = 0, NONE = -1, ALL = -2;
+	private static final int[] NOTHING = {};
+}
@@ -0,0 +1,49 @@
+package micro;
+
+// ------------------------------ Diagnostic ----------------------------
+// One error found while compiling: what kind, the source line it was found on
+// (counting from 1) and the message that was also written to the listing.
+public final class Diagnostic {
+	public static final class Kind { // Typed enumeration.
+		private Kind(final String name) {
+			this.name = name;
+		}
+
+		public String toString() {
+			return name;
+		}
+
+		private final String name;
+	}
+
+	public static final Kind LEXICAL = new Kind("lexical");
+	public static final Kind SYNTAX = new Kind("syntax");
+	public static final Kind MATCH = new Kind("match");
+	public static final Kind SEMANTIC = new Kind("semantic");
+
+	Diagnostic(final Kind kind, final int line, final String message) {
+		this.kind = kind;
+		this.line = line;
+		this.message = message;
+	}
+
+	public Kind kind() {
+		return kind;
+	}
+
+	public int line() {
+		return line;
+	}
+
+	public String message() {
+		return message;
+	}
+
+	public String toString() {
+		return line + ": " + kind + " error: " + message;
+	}
+
+	private final Kind kind;
+	private final int line;
+	private final String message;
+}
@@ -0,0 +1,23 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ------------------------------ Diagnostics -----------------------------
+// Collects the errors of one compilation, stamped with the source line being scanned.
+class Diagnostics {
+	public void newLine() {
+		line++;
+	}
+
+	public void report(final Diagnostic.Kind kind, final String message) {
+		reported.add(new Diagnostic(kind, line, message));
+	}
+
+	public List<Diagnostic> reported() {
+		return reported;
+	}
+
+	private int line = 0;
+	private final List<Diagnostic> reported = new ArrayList<Diagnostic>();
+}
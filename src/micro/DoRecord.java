@@ -0,0 +1,25 @@
+package micro;
+
+// ------------------------------ DoRecord ----------------------------
+// A DO being compiled: each arm's guard jumps past it to endOfArm, and the
+// arm jumps back to top. The last endOfArm is the way out of the loop.
+class DoRecord {
+	public DoRecord(final String top) {
+		this.top = top;
+	}
+
+	public String top() {
+		return top;
+	}
+
+	public String endOfArm() {
+		return endOfArm;
+	}
+
+	public void nextArm(final String label) {
+		endOfArm = label;
+	}
+
+	private final String top;
+	private String endOfArm;
+}
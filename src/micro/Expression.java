@@ -0,0 +1,6 @@
+package micro;
+
+// ------------------------------ Expression --------------------------
+interface Expression {
+	public abstract String samCode();
+}
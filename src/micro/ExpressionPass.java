@@ -0,0 +1,6 @@
+package micro;
+
+// ------------------------------ ExpressionPass ----------------------------
+interface ExpressionPass { // Returns the tree to lower in place of expression; it keeps the marks of the nodes it replaces.
+	public abstract Expression rewrite(Expression expression);
+}
@@ -0,0 +1,26 @@
+package micro;
+
+// ------------------------------ Guard ----------------------------
+class Guard { // <expression> <rel op> <expression>, as parsed: Immutable
+	public Guard(final Expression left, final RelativeOperator relation, final Expression right) {
+		this.left = left;
+		this.relation = relation;
+		this.right = right;
+	}
+
+	public Expression left() {
+		return left;
+	}
+
+	public RelativeOperator relation() {
+		return relation;
+	}
+
+	public Expression right() {
+		return right;
+	}
+
+	private final Expression left;
+	private final RelativeOperator relation;
+	private final Expression right;
+}
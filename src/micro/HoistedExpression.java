@@ -0,0 +1,14 @@
+package micro;
+
+// ------------------------------ HoistedExpression ----------------------------
+class HoistedExpression implements Expression { // A memory cell LoopInvariants keeps a loop-invariant value in: Immutable
+	public HoistedExpression(final int which) {
+		this.which = which;
+	}
+
+	public String samCode() {
+		return "$" + which + "hoist$"; // No variable's cell, as for SpillExpression.
+	}
+
+	private final int which;
+}
@@ -0,0 +1,20 @@
+package micro;
+
+// ------------------------------ IdExpression ----------------------------
+class IdExpression implements Expression { // Represents an identifier: Immutable
+	public IdExpression(final int symbol, final String samCode) {
+		this.symbol = symbol;
+		this.samCode = samCode;
+	}
+
+	public String samCode() {
+		return samCode;
+	}
+
+	public int symbol() {
+		return symbol;
+	}
+
+	private final int symbol; // The identifier's number in the SymbolTable
+	private final String samCode; // "$spelling$"
+}
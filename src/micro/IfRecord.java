@@ -0,0 +1,82 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ------------------------------ IfRecord ----------------------------
+// An IF being compiled. Without dispatch each guard jumps past its arm to
+// endOfIf, a fresh label per guard. With dispatch, for an IF whose first guard
+// could start a search, the guards are kept with each arm's label and where its
+// test goes; the code choosing among them goes in when the IF ends.
+class IfRecord{
+	public IfRecord(String firstLabel, String secondLabel){
+		endOfIf_Label = firstLabel;
+		endOfElse_Label = secondLabel;
+	}
+	
+	public String endOfIf(){
+		return endOfIf_Label;
+	}
+	
+	public String endOfElse(){
+		return endOfElse_Label;
+	}
+
+	public void nextGuard(final String label) {
+		endOfIf_Label = label;
+		endOfIfListed = false;
+	}
+
+	public boolean endOfIfListed() {
+		return endOfIfListed;
+	}
+
+	public void listEndOfIf() {
+		endOfIfListed = true;
+	}
+
+	public boolean dispatched() {
+		return !guards.isEmpty();
+	}
+
+	public void addArm(final Guard guard, final String label, final int position, final long anchor) {
+		guards.add(guard);
+		arms.add(label);
+		positions.add(position);
+		anchors.add(anchor);
+	}
+
+	public List<Guard> guards() {
+		return guards;
+	}
+
+	public List<String> arms() {
+		return arms;
+	}
+
+	public int position(final int arm) { // Where the arm's test goes in the kept code,
+		return positions.get(arm);
+	}
+
+	public long anchor(final int arm) { // and where it is listed.
+		return anchors.get(arm);
+	}
+
+	public String otherwise() { // The else part's label, or null
+		return otherwise;
+	}
+
+	public void startOtherwise(final String label) {
+		otherwise = label;
+	}
+	
+	private String endOfIf_Label;
+	private String endOfElse_Label;
+	private boolean endOfIfListed = false;
+	private final List<Guard> guards = new ArrayList<Guard>();
+	private final List<String> arms = new ArrayList<String>();
+	private final List<Integer> positions = new ArrayList<Integer>();
+	private final List<Long> anchors = new ArrayList<Long>();
+	private String otherwise = null;
+	
+}
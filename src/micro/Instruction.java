@@ -0,0 +1,98 @@
+package micro;
+
+// ------------------------------ Instruction ----------------------------
+// One line of generated code: a SAM instruction, a label or a SKIP directive.
+// CodeGenerator produces these rather than text so that code passes can rewrite
+// the program before CodeBuffer lists it. Immutable, apart from the anchor.
+class Instruction {
+	private Instruction(final int shape, final String opcode, final TemporaryExpression register, final Expression operand,
+			final String label) {
+		this.shape = shape;
+		this.opcode = opcode;
+		this.register = register;
+		this.operand = operand;
+		this.label = label;
+	}
+
+	public static Instruction zeroAddress(final String opcode) { // WRNL, HALT
+		return new Instruction(ZERO_ADDRESS, opcode, null, null, null);
+	}
+
+	public static Instruction oneAddress(final String opcode, final Expression operand) { // RDI, WRI
+		return new Instruction(ONE_ADDRESS, opcode, null, operand, null);
+	}
+
+	public static Instruction twoAddress(final String opcode, final TemporaryExpression register, final Expression operand) {
+		return new Instruction(TWO_ADDRESS, opcode, register, operand, null);
+	}
+
+	public static Instruction jump(final String opcode, final String label) { // Also "LABEL LABELn" and "SKIP 2"
+		return new Instruction(JUMP, opcode, null, null, label);
+	}
+
+	public static Instruction dataLabel(final String label) { // Names the SKIP that follows.
+		return new Instruction(DATA_LABEL, "LABEL", null, null, label);
+	}
+
+	public String opcode() {
+		return opcode;
+	}
+
+	public TemporaryExpression register() {
+		return register;
+	}
+
+	public Expression operand() {
+		return operand;
+	}
+
+	public String label() {
+		return label;
+	}
+
+	public boolean isCodeLabel() {
+		return shape == JUMP && opcode.equals("LABEL");
+	}
+
+	public boolean isJump() {
+		return shape == JUMP && opcode.charAt(0) == 'J';
+	}
+
+	public boolean isDirective() { // Data labels and SKIPs: storage, not code.
+		return shape == DATA_LABEL || shape == JUMP && opcode.equals("SKIP");
+	}
+
+	public String text() {
+		switch (shape) {
+		case ZERO_ADDRESS:
+			return BLANKS + opcode;
+		case ONE_ADDRESS:
+			return BLANKS + pad(opcode) + operand.samCode();
+		case TWO_ADDRESS:
+			return BLANKS + pad(opcode) + register.samCode() + ",  " + operand.samCode();
+		case JUMP:
+			return BLANKS + pad(opcode) + label;
+		default:
+			return "LABEL    " + label;
+		}
+	}
+
+	private static String pad(final String value){
+		int opCodePadLength = 8;
+		String result = value;
+		for(int i = result.length(); i < opCodePadLength; ++i){
+			result += " ";
+		}
+		return result;
+	}
+
+	private final int shape;
+	private final String opcode;
+	private final TemporaryExpression register;
+	private final Expression operand;
+	private final String label;
+	long anchor; // Listing characters written before this instruction, set by CodeBuffer.
+
+	private static final int ZERO_ADDRESS = 0, ONE_ADDRESS = 1, TWO_ADDRESS = 2, JUMP = 3, DATA_LABEL = 4;
+	private static final String BLANKS = "    ";//Left padding of instructions
+}
@@ -0,0 +1,14 @@
+package micro;
+
+// ------------------------------ Kind ----------------------------
+// The code of each Token, as TokenStream and the parser deal in them.
+final class Kind {
+	static final int IDENTIFIER = 0, LITERAL = 1, ASSIGN = 2, PLUS = 3, MINUS = 4, COMMA = 5, SEMICOLON = 6,
+			RIGHT_PARENTHESIS = 7, LEFT_PARENTHESIS = 8, PERIOD = 9, GREATER = 10, LESS = 11, GREATER_OR_EQUAL = 12,
+			LESS_OR_EQUAL = 13, EQUAL = 14, INEQUAL = 15, BEGIN = 16, END = 17, READ = 18, WRITE = 19, EOF = 20,
+			TIMES = 21, DIVIDE = 22, SKIP = 23, IF = 24, THEN = 25, ELSE = 26, FI = 27, DO = 28, OD = 29;
+	static final int COUNT = 30;
+
+	private Kind() {
+	}
+}
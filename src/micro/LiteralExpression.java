@@ -0,0 +1,26 @@
+package micro;
+
+// ------------------------------ LiteralExpression ----------------------------
+class LiteralExpression implements Expression { // Represents a numeric literal: Immutable
+	public LiteralExpression(final String value) {
+		this.value = Integer.parseInt(value);
+	}
+
+	public LiteralExpression(final int value) {
+		this.value = value;
+	}
+
+	public String samCode() {
+		return "#" + value;
+	};
+
+	public int value() {
+		return value;
+	}
+
+	public int word() { // The value as SAM holds it, in a 16-bit word
+		return (short) value;
+	}
+
+	private final int value;// The literal value.
+}
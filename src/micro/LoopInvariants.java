@@ -0,0 +1,279 @@
+package micro;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ------------------------------ LoopInvariants ----------------------------
+// Moves what a DO loop computes the same way on every pass out of it. A loop is
+// a label reached only by falling into it and by jumps back from below, with
+// no jump from outside into the code between. Walking that code, a register
+// loaded from invariants (literals, cells nothing in the loop stores to, and
+// registers so loaded) gets the tree computing it, and the instructions doing
+// so are held back. Where the register is next used otherwise, a tree with an
+// operator is loaded from a cell computed just ahead of the loop's label (the
+// preheader); a single operand is loaded there and then, as before. Nothing is
+// live in a register at a label, so the preheader may use any. Only divisions
+// by nonzero literals are moved, so the preheader cannot stop a program the
+// loop would not have. Inner loops go first; their preheaders are then code of
+// the enclosing loop like any other.
+class LoopInvariants implements CodePass {
+	public String run(final List<Instruction> code) {
+		List<int[]> loops = loops(code);
+		Map<String, Expression> cells = new HashMap<String, Expression>(); // Hoisted trees by key, of the loop at hand
+		List<Expression> allCells = new ArrayList<Expression>();
+		for (int index = loops.size() - 1; index >= 0; --index) { // Innermost, so last starting, first
+			int[] loop = loops.get(index);
+			List<Instruction> preheader = new ArrayList<Instruction>();
+			List<Instruction> body = hoist(code, loop[0], loop[1], preheader, cells, allCells.size());
+			allCells.addAll(cells.values());
+			cells.clear();
+			long anchor = code.get(loop[0]).anchor;
+			for (Instruction instruction : preheader) {
+				instruction.anchor = anchor;
+			}
+			List<Instruction> region = code.subList(loop[0] + 1, loop[1] + 1);
+			int growth = preheader.size() + body.size() - region.size();
+			region.clear();
+			region.addAll(body);
+			code.addAll(loop[0], preheader);
+			for (int outer = 0; outer < index; ++outer) { // Loops enclosing this one end further on now.
+				if (loops.get(outer)[1] > loop[0]) {
+					loops.get(outer)[1] += growth;
+				}
+			}
+		}
+		long anchor = code.isEmpty() ? 0 : code.get(code.size() - 1).anchor;
+		for (Expression cell : allCells) {
+			Instruction label = Instruction.dataLabel(cell.samCode());
+			Instruction skip = Instruction.jump("SKIP", String.valueOf(CodeGenerator.INTEGER_SIZE));
+			label.anchor = skip.anchor = anchor;
+			code.add(label);
+			code.add(skip);
+		}
+		return "Loop invariants: loops " + loops.size() + ", hoisted " + allCells.size();
+	}
+
+	// The loops, as {label, last jump back}, in order of their labels.
+	private static List<int[]> loops(final List<Instruction> code) {
+		Map<String, List<Integer>> jumps = new HashMap<String, List<Integer>>();
+		for (int at = 0; at < code.size() && !code.get(at).isDirective(); ++at) {
+			Instruction instruction = code.get(at);
+			if (instruction.isJump()) {
+				List<Integer> from = jumps.get(instruction.label());
+				if (from == null) {
+					from = new ArrayList<Integer>();
+					jumps.put(instruction.label(), from);
+				}
+				from.add(at);
+			}
+		}
+		List<int[]> loops = new ArrayList<int[]>();
+		for (int at = 0; at < code.size() && !code.get(at).isDirective(); ++at) {
+			Instruction label = code.get(at);
+			List<Integer> back = label.isCodeLabel() ? jumps.get(label.label()) : null;
+			if (back == null || back.get(0) < at) {
+				continue;
+			}
+			int end = back.get(back.size() - 1);
+			boolean closed = true; // No way in from outside but the label
+			for (int inside = at + 1; inside <= end && closed; ++inside) {
+				List<Integer> from = code.get(inside).isCodeLabel() ? jumps.get(code.get(inside).label()) : null;
+				for (int jump = 0; from != null && jump < from.size() && closed; ++jump) {
+					closed = from.get(jump) >= at && from.get(jump) <= end;
+				}
+			}
+			if (closed) {
+				loops.add(new int[] { at, end });
+			}
+		}
+		return loops;
+	}
+
+	// The loop's code after its label, with invariants replaced; their computations go to preheader.
+	private static List<Instruction> hoist(final List<Instruction> code, final int top, final int end,
+			final List<Instruction> preheader, final Map<String, Expression> cells, final int numbered) {
+		Set<String> stored = new HashSet<String>(); // Cells the loop changes
+		for (int at = top + 1; at <= end; ++at) {
+			Instruction instruction = code.get(at);
+			if (instruction.opcode().equals("STO") || instruction.opcode().equals("RDI")) {
+				stored.add(instruction.operand().samCode());
+			}
+		}
+		Expression[] tree = new Expression[CodeGenerator.TOTAL_REGISTERS]; // What each register holds, when invariant,
+		boolean[] loaded = new boolean[CodeGenerator.TOTAL_REGISTERS]; // and whether the body has loaded it yet.
+		List<Instruction> body = new ArrayList<Instruction>(end - top);
+		for (int at = top + 1; at <= end; ++at) {
+			Instruction instruction = code.get(at);
+			String opcode = instruction.opcode();
+			if (instruction.isCodeLabel()) {
+				for (int register = 0; register < tree.length; ++register) {
+					tree[register] = null;
+				}
+			} else if (instruction.register() != null && ARITHMETIC.contains(opcode)) {
+				int register = instruction.register().which();
+				Expression operand = invariant(instruction.operand(), stored, tree);
+				Expression value = null;
+				if (operand != null && opcode.equals("LD")) {
+					value = operand;
+				} else if (operand != null && tree[register] != null && (!opcode.equals("ID") || nonzero(operand))) {
+					value = combine(tree[register], opcode, operand, instruction.anchor);
+				}
+				if (value != null && need(value) <= CodeGenerator.TOTAL_REGISTERS) {
+					tree[register] = value; // Held back
+					loaded[register] = false;
+					continue;
+				}
+				if (!opcode.equals("LD")) {
+					use(register, tree, loaded, body, preheader, cells, numbered, instruction.anchor);
+				}
+				if (instruction.operand() instanceof TemporaryExpression) {
+					use(((TemporaryExpression) instruction.operand()).which(), tree, loaded, body, preheader, cells, numbered,
+							instruction.anchor);
+				}
+				tree[register] = null;
+			} else if (!instruction.isJump() && !instruction.isDirective()) { // IC, STO, RDI, WRI, WRNL, HALT
+				if (instruction.register() != null) {
+					use(instruction.register().which(), tree, loaded, body, preheader, cells, numbered, instruction.anchor);
+				}
+				if (instruction.operand() instanceof TemporaryExpression) {
+					int register = ((TemporaryExpression) instruction.operand()).which();
+					if (opcode.equals("STO") || opcode.equals("RDI")) {
+						tree[register] = null;
+					} else {
+						use(register, tree, loaded, body, preheader, cells, numbered, instruction.anchor);
+					}
+				}
+			}
+			body.add(instruction);
+		}
+		return body;
+	}
+
+	// The tree for an operand that is the same on every pass, else null.
+	private static Expression invariant(final Expression operand, final Set<String> stored, final Expression[] tree) {
+		if (operand instanceof TemporaryExpression) {
+			return tree[((TemporaryExpression) operand).which()];
+		}
+		if (operand instanceof LiteralExpression || !stored.contains(operand.samCode())) {
+			return operand;
+		}
+		return null;
+	}
+
+	private static boolean nonzero(final Expression operand) {
+		return operand instanceof LiteralExpression && ((LiteralExpression) operand).word() != 0;
+	}
+
+	// Loads register with the invariant it holds, if it has one the body has not loaded yet.
+	private static void use(final int register, final Expression[] tree, final boolean[] loaded,
+			final List<Instruction> body, final List<Instruction> preheader, final Map<String, Expression> cells,
+			final int numbered, final long anchor) {
+		if (tree[register] == null || loaded[register]) {
+			return;
+		}
+		Expression source = tree[register];
+		if (source instanceof BinaryExpression) {
+			String key = key(source);
+			Expression cell = cells.get(key);
+			if (cell == null) {
+				cell = new HoistedExpression(numbered + cells.size());
+				cells.put(key, cell);
+				lower(source, preheader);
+				preheader.add(Instruction.twoAddress("STO", new TemporaryExpression(0), cell));
+			}
+			source = cell;
+		}
+		Instruction load = Instruction.twoAddress("LD", new TemporaryExpression(register), source);
+		load.anchor = anchor;
+		body.add(load);
+		loaded[register] = true;
+	}
+
+	// The tree computing left op right, marked to compute the operand needing more
+	// registers first, as lower does; its registers() is then what lower takes.
+	private static Expression combine(final Expression left, final String opcode, final Expression right,
+			final long anchor) {
+		return new BinaryExpression(left, opcode, right, anchor, need(right) > need(left));
+	}
+
+	private static int need(final Expression tree) {
+		return tree instanceof BinaryExpression ? ((BinaryExpression) tree).registers() : 1;
+	}
+
+	// The trees held back are as deep as the source's expressions, so these walks keep their own stacks.
+	private static String key(final Expression tree) {
+		StringBuilder key = new StringBuilder();
+		ArrayDeque<Object> pending = new ArrayDeque<Object>(); // Trees and the text between them
+		pending.push(tree);
+		while (!pending.isEmpty()) {
+			Object next = pending.pop();
+			if (next instanceof BinaryExpression) {
+				BinaryExpression binary = (BinaryExpression) next;
+				key.append('(');
+				pending.push(")");
+				pending.push(binary.right());
+				pending.push(" " + binary.opcode() + " ");
+				pending.push(binary.left());
+			} else if (next instanceof Expression) {
+				key.append(((Expression) next).samCode());
+			} else {
+				key.append(next);
+			}
+		}
+		return key.toString();
+	}
+
+	// Computes tree into registers from 0 up, the operand needing more first; the result is left in register 0.
+	private static void lower(final Expression tree, final List<Instruction> out) {
+		ArrayDeque<Lowering> pending = new ArrayDeque<Lowering>();
+		pending.push(new Lowering(tree, 0));
+		while (!pending.isEmpty()) {
+			Lowering step = pending.peek();
+			TemporaryExpression base = new TemporaryExpression(step.base);
+			if (!(step.tree instanceof BinaryExpression)) {
+				out.add(Instruction.twoAddress("LD", base, step.tree));
+				pending.pop();
+				continue;
+			}
+			BinaryExpression binary = (BinaryExpression) step.tree;
+			String opcode = binary.opcode();
+			if (step.operands == 0) {
+				pending.push(new Lowering(binary.rightFirst() ? binary.right() : binary.left(), step.base));
+			} else if (!(binary.right() instanceof BinaryExpression)) {
+				out.add(Instruction.twoAddress(opcode, base, binary.right()));
+				pending.pop();
+			} else if (step.operands == 1) {
+				pending.push(new Lowering(binary.rightFirst() ? binary.left() : binary.right(), step.base + 1));
+			} else {
+				TemporaryExpression next = new TemporaryExpression(step.base + 1);
+				if (!binary.rightFirst() || opcode.equals("IA") || opcode.equals("IM")) {
+					out.add(Instruction.twoAddress(opcode, base, next));
+				} else { // The left operand is in base + 1, and the result has to be too.
+					out.add(Instruction.twoAddress(opcode, next, base));
+					out.add(Instruction.twoAddress("LD", base, next));
+				}
+				pending.pop();
+			}
+			step.operands++;
+		}
+	}
+
+	private static final class Lowering { // A tree of lower's walk
+		Lowering(final Expression tree, final int base) {
+			this.tree = tree;
+			this.base = base;
+		}
+
+		final Expression tree;
+		final int base; // The register its value goes to
+		int operands; // How many of its operands are computed
+	}
+
+	private static final Set<String> ARITHMETIC = new HashSet<String>(Arrays.asList("LD", "IA", "IS", "IM", "ID"));
+}
@@ -0,0 +1,53 @@
+package micro;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ------------------------------ MappedSourceReader ----------------------
+// Reads an ASCII source file through memory-mapped regions of at most
+// REGION_SIZE bytes, widening the bytes straight into the scanner's window.
+// Only the current region is mapped, so files may be larger than the heap.
+class MappedSourceReader extends Reader {
+	public MappedSourceReader(final Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+	}
+
+	public int read(final char[] buffer, final int offset, final int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (region == null || !region.hasRemaining()) {
+			if (position >= size) {
+				return -1;
+			}
+			region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+			position += region.limit();
+		}
+		int count = Math.min(length, region.remaining());
+		if (bytes.length < count) {
+			bytes = new byte[count];
+		}
+		region.get(bytes, 0, count);
+		for (int i = 0; i < count; ++i) {
+			buffer[offset + i] = (char) (bytes[i] & 0xff);
+		}
+		return count;
+	}
+
+	public void close() throws IOException {
+		region = null;
+		channel.close();
+	}
+
+	private final FileChannel channel;
+	private final long size;
+	private long position = 0; // File offset just past the current region.
+	private MappedByteBuffer region = null;
+	private byte[] bytes = new byte[0];
+	private static final long REGION_SIZE = 1L << 28;
+}
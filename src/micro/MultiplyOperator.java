@@ -0,0 +1,17 @@
+package micro;
+
+// ------------------------------ MultiplyOperator ----------------------------
+class MultiplyOperator { // Typed enumeration.
+	private MultiplyOperator(final String samCode) {
+		code = samCode;
+	}
+
+	public static final MultiplyOperator TIMES = new MultiplyOperator("IM");
+	public static final MultiplyOperator DIVIDE = new MultiplyOperator("ID");
+
+	public String samCode() {
+		return code;
+	}
+
+	private final String code;
+}
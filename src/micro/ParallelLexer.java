@@ -0,0 +1,177 @@
+package micro;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+// ------------------------------ ParallelLexer ----------------------------
+// Reads the source a block at a time, cut after the end of its last whole line,
+// and scans it into TokenStream blocks. No token spans a line (a "--" comment
+// ends with its line), so with more than one chunk a block splits at line ends
+// into chunks that Scanners scan at the same time, each in place and into a
+// block of its own, and the next block is read and scanned while the parser
+// works through this one. With one chunk, a block is scanned when the parser
+// gets to it, into the text and arrays of one it is done with.
+class ParallelLexer {
+	public ParallelLexer(final Reader in, final int chunks, final char[] window) {
+		this(in, chunks, chunks > 1 ? BLOCK_SIZE : window.length, window);
+	}
+
+	ParallelLexer(final Reader in, final int chunks, final int blockSize, final char[] window) {
+		this.in = in;
+		this.chunks = chunks;
+		this.blockSize = blockSize;
+		this.window = window;
+		if (chunks > 1) {
+			ahead = POOL.submit(readAhead());
+		}
+	}
+
+	// The next block; spare, when not null, is one the parser is done with.
+	public TokenStream.Block take(final TokenStream.Block spare) {
+		if (chunks == 1) {
+			TokenStream.Block[] blocks = scan(spare);
+			return blocks[0];
+		}
+		if (batch == null || taken == batch.length) {
+			try {
+				batch = ahead.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while lexing", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Lexing failed", e.getCause());
+			}
+			taken = 0;
+			ahead = batch[batch.length - 1].last ? null : POOL.submit(readAhead());
+		}
+		return batch[taken++];
+	}
+
+	public void close() { // Waits out the read-ahead, so that nothing reads the source after this.
+		if (ahead != null) {
+			try {
+				ahead.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// Nobody wants the tokens any more.
+			}
+			ahead = null;
+		}
+	}
+
+	private Callable<TokenStream.Block[]> readAhead() {
+		return new Callable<TokenStream.Block[]>() {
+			public TokenStream.Block[] call() {
+				return scan(null);
+			}
+		};
+	}
+
+	// Reads the next block, behind what the last one cut off, and scans its chunks at once.
+	private TokenStream.Block[] scan(final TokenStream.Block spare) {
+		int kept = carryEnd - carryStart;
+		char[] text = spare != null ? spare.text : window != null ? window : new char[blockSize];
+		window = null;
+		if (text.length < Math.max(blockSize, kept * 2)) {
+			text = new char[Math.max(blockSize, kept * 2)];
+		}
+		if (kept > 0) {
+			System.arraycopy(carry, carryStart, text, 0, kept);
+		}
+		int length = kept;
+		boolean end = false;
+		int cut;
+		while (true) {
+			while (!end && length < text.length) {
+				int count;
+				try {
+					count = in.read(text, length, text.length - length);
+				} catch (IOException e) {
+					count = -1; // The source ends here, as for any reader that fails.
+				}
+				if (count < 0) {
+					end = true;
+				} else {
+					length += count;
+				}
+			}
+			cut = length;
+			while (!end && cut > 0 && !startsLine(text, cut, length)) {
+				cut--;
+			}
+			if (cut > 0 || end) {
+				break;
+			}
+			char[] wider = new char[text.length * 2]; // A line longer than the block
+			System.arraycopy(text, 0, wider, 0, length);
+			text = wider;
+		}
+		carry = text;
+		carryStart = cut;
+		carryEnd = length;
+		TokenStream.Block[] blocks = new TokenStream.Block[chunks];
+		if (chunks == 1) {
+			if (spare != null) {
+				spare.reuse(text);
+				blocks[0] = spare;
+			} else {
+				blocks[0] = new TokenStream.Block(text, cut / 4 + 1);
+			}
+			new Scanner(text, 0, cut, blocks[0]).scan();
+		} else {
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(chunks);
+			int from = 0;
+			for (int chunk = 0; chunk < chunks; ++chunk) {
+				int to = Math.max(from, (int) ((long) cut * (chunk + 1) / chunks));
+				while (to > 0 && to < cut && !startsLine(text, to, cut)) {
+					to++;
+				}
+				final TokenStream.Block block = new TokenStream.Block(text, (to - from) / 4 + 1);
+				final int start = from;
+				final int stop = to;
+				tasks.add(ForkJoinTask.adapt(new Runnable() {
+					public void run() {
+						new Scanner(block.text, start, stop, block).scan();
+					}
+				}));
+				blocks[chunk] = block;
+				from = to;
+			}
+			ForkJoinTask.invokeAll(tasks);
+		}
+		if (end) {
+			TokenStream.Block last = blocks[blocks.length - 1];
+			last.add(Kind.EOF, cut, 0);
+			last.last = true;
+		}
+		return blocks;
+	}
+
+	// Whether a line starts at text[at], reading no further than to: after a '\n',
+	// or after a '\r' that does not start a "\r\n". As Scanner splits lines.
+	private static boolean startsLine(final char[] text, final int at, final int to) {
+		char before = text[at - 1];
+		return before == '\n' || before == '\r' && at < to && text[at] != '\n';
+	}
+
+	private final Reader in;
+	private final int chunks;
+	private final int blockSize;
+	private char[] window; // The text of the first block, if not null
+	private char[] carry = null; // The text of the last block read, and where in it
+	private int carryStart = 0; // the line it cut off starts
+	private int carryEnd = 0; // and ends.
+	private Future<TokenStream.Block[]> ahead = null; // The batch after this one, being read and scanned; null after the last.
+	private TokenStream.Block[] batch = null; // The blocks of one read,
+	private int taken = 0; // and how many the parser has.
+	static final int BLOCK_SIZE = 1 << 22; // Characters read at a time, before rounding down to a line end
+	private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+}
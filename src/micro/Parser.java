@@ -0,0 +1,364 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// ------------------------------ Parser -------------------------------
+class Parser {
+	public Parser(final PrintWriter out, final TokenStream tokens, final SymbolTable symbolTable, final SemanticActions semantics) {
+		this(out, tokens, symbolTable, semantics, new Diagnostics());
+	}
+
+	public Parser(final PrintWriter out, final TokenStream tokens, final SymbolTable symbolTable, final SemanticActions semantics,
+			final Diagnostics diagnostics) {
+		this.out = out;
+		this.diagnostics = diagnostics;
+		this.tokens = tokens;
+		this.symbolTable = symbolTable;
+		this.semantics = semantics;
+	}
+
+	public void systemGoal() { // <system goal> -> #Start <program> "EOF_SYMBOL" #Finish
+		semantics.start();
+		program();
+		tokens.match(Kind.EOF);
+		semantics.finish();
+	}
+
+	private void syntaxError(final int kind) {
+		String message = "Syntax Error detected. Token was: " + Token.of(kind).name();
+		out.println(message);
+		diagnostics.report(Diagnostic.SYNTAX, message);
+		errors++;
+	}
+
+	private void program() { // <program> -> "BEGIN" <statement list> "END" "."
+		tokens.match(Kind.BEGIN);
+		statementList();
+		tokens.match(Kind.END);
+		tokens.match(Kind.PERIOD);
+	}
+
+	// <statement list> -> <statement> {<statement>}
+	// The IF and DO statements a list is nested in wait on a stack, not in calls,
+	// so nesting is bounded by the heap only. A nested statement list starts with
+	// first set; when it ends, the innermost open statement goes on.
+	private void statementList() {
+		ArrayDeque<OpenStatement> open = new ArrayDeque<OpenStatement>();
+		boolean first = true; // A statement list has at least one statement.
+		while (true) {
+			int kind = tokens.kind();
+			if (first || startsStatement(kind)) {
+				first = false;
+				if (kind == Kind.IF) {
+					tokens.advance();
+					OpenStatement statement = new OpenStatement(semantics.startIf(), null);
+					open.push(statement);
+					semantics.ifTest(statement.ifRecord, guard());
+					tokens.match(Kind.THEN);
+					first = true;
+				} else if (kind == Kind.DO) {
+					tokens.advance();
+					OpenStatement statement = new OpenStatement(null, semantics.startDo());
+					open.push(statement);
+					semantics.doTest(statement.doRecord, guard());
+					tokens.match(Kind.THEN);
+					first = true;
+				} else {
+					statement(kind);
+				}
+			} else if (open.isEmpty()) {
+				return;
+			} else if (open.peek().doRecord != null) {
+				first = nextArm(open);
+			} else if (open.peek().inElse) {
+				endIf(open.pop().ifRecord);
+			} else {
+				first = nextGuard(open);
+			}
+		}
+	}
+
+	private static boolean startsStatement(final int kind) {
+		switch (kind) {
+		case Kind.IDENTIFIER: case Kind.READ: case Kind.WRITE: case Kind.IF: case Kind.DO: case Kind.SKIP:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// An IF or DO whose statement list is being parsed
+	private static final class OpenStatement {
+		OpenStatement(final IfRecord ifRecord, final DoRecord doRecord) {
+			this.ifRecord = ifRecord;
+			this.doRecord = doRecord;
+		}
+
+		final IfRecord ifRecord;
+		final DoRecord doRecord;
+		boolean inElse = false; // Whether the list is the else part
+	}
+
+	private void statement(final int kind) {
+	// <statement> -> <variable> ":=" <expression> #Assign ";"
+	// <statement> -> "READ" <var list> ";"
+	// <statement> -> "WRITE" <expr list> ";" #EndWrite
+	// <statement> -> "SKIP"";"
+	// IF and DO: see statementList.
+		switch (kind) {
+		case Kind.IDENTIFIER:
+			assignment(variable());
+			break;
+		case Kind.READ:
+			tokens.advance();
+			variableList();
+			tokens.match(Kind.SEMICOLON);
+			break;
+		case Kind.WRITE:
+			tokens.advance();
+			expressionList();
+			tokens.match(Kind.SEMICOLON);
+			semantics.endWrite();
+			break;
+		case Kind.SKIP:
+			tokens.advance();
+			tokens.match(Kind.SEMICOLON);
+			break;
+		default:
+			syntaxError(kind);
+		}
+	}
+
+	private void assignment(final Expression identifier) { // <variable> has been read.
+		tokens.match(Kind.ASSIGN);
+		Expression expression = expression();
+		semantics.assign(identifier, expression);
+		tokens.match(Kind.SEMICOLON);
+	}
+
+	// <statement> -> "IF" #StartIf <guarded list> {"[]" <guarded list>} ["[]" #StartElse <statement list>] #EndIf "FI" ";"
+	// Once a guarded list is parsed, the innermost open statement: whether a
+	// statement list starts, another guarded list or the else part; else the
+	// IF ends. After "[]" an identifier could start either: ":=" after it makes
+	// the else part, and that first assignment is parsed here.
+	private boolean nextGuard(final ArrayDeque<OpenStatement> open) {
+		OpenStatement statement = open.peek();
+		IfRecord record = statement.ifRecord;
+		if (tokens.kind() == Kind.ELSE) {
+			tokens.advance();
+			semantics.endIfBeginElse(record);
+			int kind = tokens.kind();
+			statement.inElse = true;
+			if (kind == Kind.IDENTIFIER && tokens.kind(1) == Kind.ASSIGN) {
+				Expression variable = variable(); // Declared, if need be, before the else part starts.
+				semantics.startElse(record);
+				assignment(variable);
+				return false;
+			} else if (kind != Kind.IDENTIFIER && kind != Kind.LITERAL && kind != Kind.LEFT_PARENTHESIS) {
+				semantics.startElse(record);
+				return true;
+			}
+			statement.inElse = false;
+			semantics.ifTest(record, guard());
+			tokens.match(Kind.THEN);
+			return true;
+		}
+		endIf(open.pop().ifRecord);
+		return false;
+	}
+
+	private void endIf(final IfRecord record) {
+		semantics.endIfElse(record);
+		tokens.match(Kind.FI);
+		tokens.match(Kind.SEMICOLON);
+	}
+
+	// <statement> -> "DO" #StartDo <loop arm> {"[]" <loop arm>} "OD" ";"
+	// Once an arm's statement list is parsed, the innermost open statement:
+	// whether another arm follows, else the DO ends. The arm of the first guard
+	// that holds repeats until none does.
+	private boolean nextArm(final ArrayDeque<OpenStatement> open) {
+		DoRecord record = open.peek().doRecord;
+		semantics.endDoArm(record);
+		if (tokens.kind() == Kind.ELSE) {
+			tokens.advance();
+			semantics.doTest(record, guard());
+			tokens.match(Kind.THEN);
+			return true;
+		}
+		open.pop();
+		tokens.match(Kind.OD);
+		tokens.match(Kind.SEMICOLON);
+		return false;
+	}
+
+	private void variableList() { 
+		// <var list> -> <variable> #ReadVar {"," <variable> #ReadVar }
+		Expression variable = variable();
+		semantics.readVariable(variable);
+		while (tokens.kind() == Kind.COMMA) {
+			tokens.advance();
+			variable = variable();
+			semantics.readVariable(variable);
+		}
+	}
+
+	private void expressionList() { 
+		// <expr list> -> <expression> #WriteExpr {"," <expression> #WriteExpr}
+		Expression expression = expression();
+		semantics.writeExpression(expression);
+		while (tokens.kind() == Kind.COMMA) {
+			tokens.advance();
+			expression = expression();
+			semantics.writeExpression(expression);
+		}
+	}
+	
+	private Guard guard(){
+		//<guard> -> <expression> <rel op> <expression>
+		Expression leftCondition = expression();
+		RelativeOperator relationOp = relativeOperator(tokens.kind());
+		Expression rightCondition = expression();
+		return new Guard(leftCondition, relationOp, rightCondition);
+	}
+
+	// <expression> -> <factor> {<add op> <factor> #AddExpression}
+	// <factor> -> <primary> {<multiply op> <primary> #MultiplyExpression}
+	// <primary> -> "(" <expression> ")" | <variable> | "INTEGER_LITERAL"
+	// The expressions a parenthesized one is nested in wait, half reduced, on
+	// a stack rather than in calls. Each reduces where the calls would: a
+	// product as its right primary is read, a sum once the next token shows
+	// its right factor has ended.
+	private Expression expression() {
+		int depth = 0;
+		Pending pending = pending(depth);
+		while (true) {
+			Expression operand;
+			int kind = tokens.kind();
+			if (kind == Kind.LEFT_PARENTHESIS) {
+				tokens.advance();
+				pending = pending(++depth);
+				continue;
+			} else if (kind == Kind.IDENTIFIER) {
+				operand = variable();
+			} else if (kind == Kind.LITERAL) {
+				operand = new LiteralExpression(tokens.literalValue());
+				tokens.advance();
+			} else {
+				syntaxError(kind);
+				operand = new LiteralExpression(0); // Stand-in so compilation can go on to report more.
+			}
+			while (true) {
+				pending.product = pending.product == null ? operand
+						: semantics.multiplyExpression(pending.product, pending.multiplyOperator, operand);
+				kind = tokens.kind();
+				if (kind == Kind.TIMES || kind == Kind.DIVIDE) {
+					pending.multiplyOperator = multiplyOperator();
+					break;
+				}
+				pending.sum = pending.sum == null ? pending.product
+						: semantics.addExpression(pending.sum, pending.addOperator, pending.product);
+				pending.product = null;
+				if (kind == Kind.PLUS || kind == Kind.MINUS) {
+					pending.addOperator = addOperator();
+					break;
+				}
+				operand = pending.sum;
+				pending.sum = null;
+				if (depth == 0) {
+					return operand;
+				}
+				tokens.match(Kind.RIGHT_PARENTHESIS);
+				pending = expressions.get(--depth);
+			}
+		}
+	}
+
+	// An expression being parsed, at depth in parentheses: reset, from a pool.
+	private Pending pending(final int depth) {
+		if (depth == expressions.size()) {
+			expressions.add(new Pending());
+		}
+		Pending pending = expressions.get(depth);
+		pending.sum = pending.product = null;
+		return pending;
+	}
+
+	// The sum and the product (its right factor) so far, and the operators
+	// that wait on the next operands; null for none yet.
+	private static final class Pending {
+		Expression sum;
+		AddOperator addOperator;
+		Expression product;
+		MultiplyOperator multiplyOperator;
+	}
+
+	private AddOperator addOperator() { // <add op> -> "+" | "-"
+		int kind = tokens.kind();
+		AddOperator result = null;
+		if (kind == Kind.PLUS) {
+			result = AddOperator.PLUS;
+			tokens.advance();
+		} else if (kind == Kind.MINUS) {
+			result = AddOperator.MINUS;
+			tokens.advance();
+		} else {
+			syntaxError(kind);
+		}
+		return result;
+	}
+	
+	private MultiplyOperator multiplyOperator() { // <mult op> -> "*" | "/"
+		int kind = tokens.kind();
+		MultiplyOperator result = null;
+		if (kind == Kind.TIMES) {
+			result = MultiplyOperator.TIMES;
+			tokens.advance();
+		} else if (kind == Kind.DIVIDE) {
+			result = MultiplyOperator.DIVIDE;
+			tokens.advance();
+		} else {
+			syntaxError(kind);
+		}
+		return result;
+	}
+	
+	private RelativeOperator relativeOperator(final int kind) { // <rel op> -> ">" | ">=" | "<" | "<=" | "=" | "#"
+		RelativeOperator result = null;
+		switch (kind) {
+		case Kind.GREATER: result = RelativeOperator.GREATERTHAN; break;
+		case Kind.GREATER_OR_EQUAL: result = RelativeOperator.GREATERTHANOREQUAL; break;
+		case Kind.LESS: result = RelativeOperator.LESSTHAN; break;
+		case Kind.LESS_OR_EQUAL: result = RelativeOperator.LESSTHANOREQUAL; break;
+		case Kind.EQUAL: result = RelativeOperator.EQUAL; break;
+		case Kind.INEQUAL: result = RelativeOperator.INEQUAL; break;
+		default:
+			syntaxError(kind);
+			return result;
+		}
+		tokens.advance();
+		return result;
+	}
+
+	private Expression variable() { // <variable> -> "IDENTIFIER" #ProcessIdentifier
+		tokens.kind(); // List through it.
+		Expression result = semantics.processIdentifier(tokens.text(), tokens.start(), tokens.length());
+		tokens.match(Kind.IDENTIFIER);
+		return result;
+	}
+
+	public int errors() {
+		return errors;
+	}
+
+	private final PrintWriter out;
+	private final Diagnostics diagnostics;
+	private final TokenStream tokens;
+	private final SymbolTable symbolTable;
+	private final SemanticActions semantics;
+	private final List<Pending> expressions = new ArrayList<Pending>(); // By depth in parentheses
+	private int errors = 0;
+}
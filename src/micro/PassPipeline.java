@@ -0,0 +1,73 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ------------------------------ PassPipeline ----------------------------
+// The optimizations one compilation runs. Expression passes rewrite each
+// expression tree before CodeGenerator lowers it; code passes rewrite the
+// instructions of the whole program, in order, before they are listed. With no
+// passes the code is exactly what the one-pass compiler emitted. Passes keep no
+// state between runs, so one pipeline serves any number of compilations at once.
+class PassPipeline {
+	public PassPipeline(final List<ExpressionPass> expressionPasses, final List<CodePass> codePasses) {
+		this(expressionPasses, codePasses, false);
+	}
+
+	// tuneGeneration has CodeGenerator keep variables in registers between
+	// statements and, when code passes keep the code, choose IF arms by code
+	// generated once all the guards are known.
+	public PassPipeline(final List<ExpressionPass> expressionPasses, final List<CodePass> codePasses,
+			final boolean tuneGeneration) {
+		this.expressionPasses = new ArrayList<ExpressionPass>(expressionPasses);
+		this.codePasses = new ArrayList<CodePass>(codePasses);
+		this.tuneGeneration = tuneGeneration;
+	}
+
+	public static final PassPipeline NONE = new PassPipeline(Collections.<ExpressionPass>emptyList(),
+			Collections.<CodePass>emptyList());
+
+	public static PassPipeline standard() { // -O
+		List<ExpressionPass> expressionPasses = new ArrayList<ExpressionPass>();
+		expressionPasses.add(new ConstantFolding());
+		expressionPasses.add(new SethiUllman());
+		List<CodePass> codePasses = new ArrayList<CodePass>();
+		codePasses.add(new Branches());
+		codePasses.add(new LoopInvariants());
+		codePasses.add(new Peephole());
+		codePasses.add(new DeadStores());
+		codePasses.add(new DataLayout());
+		return new PassPipeline(expressionPasses, codePasses, true);
+	}
+
+	public Expression rewrite(Expression expression) {
+		for (ExpressionPass pass : expressionPasses) {
+			expression = pass.rewrite(expression);
+		}
+		return expression;
+	}
+
+	public List<String> run(final List<Instruction> code) {
+		List<String> reports = new ArrayList<String>();
+		for (CodePass pass : codePasses) {
+			String report = pass.run(code);
+			if (report != null) {
+				reports.add(report);
+			}
+		}
+		return reports;
+	}
+
+	public boolean rewritesCode() {
+		return !codePasses.isEmpty();
+	}
+
+	public boolean tunesGeneration() {
+		return tuneGeneration;
+	}
+
+	private final List<ExpressionPass> expressionPasses;
+	private final List<CodePass> codePasses;
+	private final boolean tuneGeneration;
+}
@@ -0,0 +1,192 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ------------------------------ Peephole ----------------------------
+// Slides a window over the generated code. Each instruction is appended to the
+// output, and the rules then look at the tail of the output, rewriting it while
+// any of them applies, so one rewrite can expose the next. To add a rule, add
+// it to RULES. The report gives how often each rule fired.
+class Peephole implements CodePass {
+	public String run(final List<Instruction> code) {
+		int[] hits = new int[RULES.length];
+		List<Instruction> out = new ArrayList<Instruction>(code.size());
+		for (Instruction instruction : code) {
+			out.add(instruction);
+			boolean rewritten = true;
+			while (rewritten) {
+				rewritten = false;
+				for (int rule = 0; rule < RULES.length && !rewritten; ++rule) {
+					if (RULES[rule].apply(out)) {
+						hits[rule]++;
+						rewritten = true;
+					}
+				}
+			}
+		}
+		code.clear();
+		code.addAll(out);
+		String report = "Peephole:";
+		for (int rule = 0; rule < RULES.length; ++rule) {
+			report += " " + RULES[rule].name + " " + hits[rule] + (rule < RULES.length - 1 ? "," : "");
+		}
+		return report;
+	}
+
+	abstract static class Rule {
+		Rule(final String name) {
+			this.name = name;
+		}
+
+		// Rewrites the tail of out, which ends with the instruction just added; false if the rule does not apply.
+		abstract boolean apply(List<Instruction> out);
+
+		final String name;
+	}
+
+	// ---- The rules ----
+
+	static final Rule[] RULES = {
+		new Rule("store-load") { // STO Rx, m; LD Rx, m: Rx still holds m.
+			boolean apply(final List<Instruction> out) {
+				Instruction load = last(out, 0);
+				Instruction store = last(out, 1);
+				if (is(load, "LD") && is(store, "STO") && sameRegister(load, store) && sameOperand(load, store)) {
+					out.remove(out.size() - 1);
+					return true;
+				}
+				return false;
+			}
+		},
+		new Rule("load-store") { // LD Rx, m; STO Rx, m: m already holds Rx.
+			boolean apply(final List<Instruction> out) {
+				Instruction store = last(out, 0);
+				Instruction load = last(out, 1);
+				if (is(store, "STO") && is(load, "LD") && sameRegister(load, store) && sameOperand(load, store)) {
+					out.remove(out.size() - 1);
+					return true;
+				}
+				return false;
+			}
+		},
+		new Rule("reload") { // LD or STO Rx, a; ...; LD Rx, a with neither Rx nor a written in between.
+			boolean apply(final List<Instruction> out) {
+				Instruction load = last(out, 0);
+				if (!is(load, "LD")) {
+					return false;
+				}
+				for (int back = 1; back <= RELOAD_WINDOW; ++back) {
+					Instruction earlier = last(out, back);
+					if (earlier == null || earlier.isCodeLabel() || earlier.isJump()) {
+						return false;
+					}
+					if ((is(earlier, "LD") || is(earlier, "STO")) && sameRegister(earlier, load) && sameOperand(earlier, load)) {
+						out.remove(out.size() - 1);
+						return true;
+					}
+					if (writes(earlier, load.register().samCode()) || writes(earlier, load.operand().samCode())) {
+						return false;
+					}
+				}
+				return false;
+			}
+		},
+		new Rule("dead-load") { // LD Rx, a; LD Rx, b: the first value is never used.
+			boolean apply(final List<Instruction> out) {
+				Instruction second = last(out, 0);
+				Instruction first = last(out, 1);
+				if (is(second, "LD") && is(first, "LD") && sameRegister(first, second)
+						&& !second.operand().samCode().equals(second.register().samCode())) {
+					out.remove(out.size() - 2);
+					return true;
+				}
+				return false;
+			}
+		},
+		new Rule("self-move") { // LD Rx, Rx or STO Rx, Rx
+			boolean apply(final List<Instruction> out) {
+				Instruction move = last(out, 0);
+				if ((is(move, "LD") || is(move, "STO")) && move.operand().samCode().equals(move.register().samCode())) {
+					out.remove(out.size() - 1);
+					return true;
+				}
+				return false;
+			}
+		},
+		new Rule("jump-next") { // A jump to one of the labels right after it.
+			boolean apply(final List<Instruction> out) {
+				Instruction label = last(out, 0);
+				if (label == null || !label.isCodeLabel()) {
+					return false;
+				}
+				int back = 1;
+				while (last(out, back) != null && last(out, back).isCodeLabel()) {
+					back++;
+				}
+				Instruction jump = last(out, back);
+				if (jump != null && jump.isJump() && jump.label().equals(label.label())) {
+					out.remove(out.size() - 1 - back);
+					return true;
+				}
+				return false;
+			}
+		},
+		new Rule("unreachable") { // Code after JMP or HALT that no label leads to.
+			boolean apply(final List<Instruction> out) {
+				Instruction dead = last(out, 0);
+				Instruction before = last(out, 1);
+				if (dead != null && !dead.isCodeLabel() && !dead.isDirective() && before != null
+						&& (is(before, "JMP") || is(before, "HALT"))) {
+					out.remove(out.size() - 1);
+					return true;
+				}
+				return false;
+			}
+		},
+		new Rule("double") { // IM Rx, #2 is IA Rx, Rx. SAM has no shifts, so no other power of two gets cheaper.
+			boolean apply(final List<Instruction> out) {
+				Instruction multiply = last(out, 0);
+				if (is(multiply, "IM") && multiply.operand() instanceof LiteralExpression
+						&& ((LiteralExpression) multiply.operand()).word() == 2) {
+					Instruction add = Instruction.twoAddress("IA", multiply.register(), multiply.register());
+					add.anchor = multiply.anchor;
+					out.set(out.size() - 1, add);
+					return true;
+				}
+				return false;
+			}
+		},
+	};
+
+	static final int RELOAD_WINDOW = 8; // Instructions the reload rule looks back over.
+
+	static Instruction last(final List<Instruction> out, final int back) {
+		int at = out.size() - 1 - back;
+		return at >= 0 ? out.get(at) : null;
+	}
+
+	static boolean is(final Instruction instruction, final String opcode) {
+		return instruction != null && instruction.opcode().equals(opcode) && !instruction.isCodeLabel();
+	}
+
+	static boolean sameRegister(final Instruction a, final Instruction b) {
+		return a.register().which() == b.register().which();
+	}
+
+	static boolean sameOperand(final Instruction a, final Instruction b) {
+		return a.operand().samCode().equals(b.operand().samCode());
+	}
+
+	// Whether instruction changes location, a register ("R3") or memory operand ("$a$").
+	static boolean writes(final Instruction instruction, final String location) {
+		String opcode = instruction.opcode();
+		if (opcode.equals("STO") || opcode.equals("RDI")) {
+			return instruction.operand().samCode().equals(location);
+		}
+		if (instruction.register() != null && !opcode.equals("IC")) { // LD, IA, IS, IM, ID
+			return instruction.register().samCode().equals(location);
+		}
+		return false;
+	}
+}
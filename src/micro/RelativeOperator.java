@@ -0,0 +1,21 @@
+package micro;
+
+// ------------------------------ RelativeOperator ----------------------------
+class RelativeOperator { // Typed enumeration.
+	private RelativeOperator(final String relOp) {
+		this.code = relOp;
+	}
+	
+	public static final RelativeOperator GREATERTHAN = new RelativeOperator("JLE");
+	public static final RelativeOperator GREATERTHANOREQUAL = new RelativeOperator("JLT");
+	public static final RelativeOperator LESSTHAN = new RelativeOperator("JGE");
+	public static final RelativeOperator LESSTHANOREQUAL = new RelativeOperator("JGT");
+	public static final RelativeOperator EQUAL = new RelativeOperator("JNE");
+	public static final RelativeOperator INEQUAL = new RelativeOperator("JEQ");
+	
+	public String samCode() {
+		return code;
+	}
+
+	private final String code;
+}
@@ -0,0 +1,193 @@
+package micro;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ------------------------------ SamAssembler ----------------------------
+// Assembles the SAM text CodeGenerator emits (LABELs, $var$ data labels, #literal
+// and Rn operands) into the decoded form SamMachine runs, and writes that as an
+// object file so a program is parsed once and then only mapped.
+//
+// Object file, big-endian ints:
+//   MAGIC, VERSION, instruction count, data cells,
+//   (instruction count + 1) * SamMachine.WIDTH ints of code, labels resolved.
+class SamAssembler {
+	public SamAssembler(final List<String> lines) {
+		assemble(lines);
+	}
+
+	public void write(final Path objectFile) throws IOException {
+		ByteBuffer object = ByteBuffer.allocateDirect(HEADER_SIZE + code.length * 4);
+		object.putInt(MAGIC).putInt(VERSION).putInt(instructionCount).putInt(dataCells);
+		object.asIntBuffer().put(code);
+		object.clear();
+		try (FileChannel channel = FileChannel.open(objectFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (object.hasRemaining()) {
+				channel.write(object);
+			}
+		}
+	}
+
+	public static boolean isObject(final Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] magic = new byte[4];
+			return in.readNBytes(magic, 0, 4) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+		}
+	}
+
+	public int[] code() {
+		return code;
+	}
+
+	public int dataCells() {
+		return dataCells;
+	}
+
+	public int instructionCount() {
+		return instructionCount;
+	}
+
+	// Two passes: lay out code and data and note where each label lands, then
+	// encode the instructions with their operands resolved.
+	private void assemble(final List<String> lines) {
+		Map<String, Integer> codeLabels = new HashMap<String, Integer>();
+		Map<String, Integer> dataLabels = new HashMap<String, Integer>();
+		String pendingLabel = null;
+		int instructions = 0;
+		int cells = 0;
+		for (String line : lines) {
+			String[] fields = fields(line);
+			if (fields == null) {
+				continue;
+			}
+			String opcode = fields[0];
+			if (opcode.equals("LABEL")) {
+				if (pendingLabel != null) {
+					codeLabels.put(pendingLabel, instructions);
+				}
+				pendingLabel = operand(fields, 1, line);
+			} else if (opcode.equals("SKIP")) {
+				if (pendingLabel != null) {
+					dataLabels.put(pendingLabel, cells);
+					pendingLabel = null;
+				}
+				cells += (Integer.parseInt(operand(fields, 1, line)) + SamMachine.WORD_SIZE - 1) / SamMachine.WORD_SIZE;
+			} else {
+				if (pendingLabel != null) {
+					codeLabels.put(pendingLabel, instructions);
+					pendingLabel = null;
+				}
+				instructions++;
+			}
+		}
+		if (pendingLabel != null) {
+			codeLabels.put(pendingLabel, instructions);
+		}
+		code = new int[(instructions + 1) * SamMachine.WIDTH]; // The last slot stays 0: running into it is an error.
+		int pc = 0;
+		for (String line : lines) {
+			String[] fields = fields(line);
+			if (fields == null || fields[0].equals("LABEL") || fields[0].equals("SKIP")) {
+				continue;
+			}
+			Integer opcode = OPCODES.get(fields[0]);
+			if (opcode == null) {
+				throw new SamError("Unknown instruction: " + line.trim(), pc / SamMachine.WIDTH);
+			}
+			int op = opcode;
+			if (op >= SamMachine.JMP && op <= SamMachine.JGT) {
+				Integer target = codeLabels.get(operand(fields, 1, line));
+				if (target == null) {
+					throw new SamError("Undefined label: " + fields[1], pc / SamMachine.WIDTH);
+				}
+				code[pc + 2] = target * SamMachine.WIDTH;
+			} else if (op == SamMachine.RDI || op == SamMachine.WRI) {
+				op += encodeOperand(operand(fields, 1, line), dataLabels, code, pc);
+			} else if (op != SamMachine.WRNL && op != SamMachine.HALT) {
+				code[pc + 1] = register(operand(fields, 1, line), line);
+				op += encodeOperand(operand(fields, 2, line), dataLabels, code, pc);
+			}
+			if (op == SamMachine.STO + SamMachine.LITERAL || op == SamMachine.RDI + SamMachine.LITERAL) {
+				throw new SamError("Cannot store into a literal: " + line.trim(), pc / SamMachine.WIDTH);
+			}
+			code[pc] = op;
+			pc += SamMachine.WIDTH;
+		}
+		dataCells = cells;
+		instructionCount = instructions;
+	}
+
+	// Stores the operand's value and returns the addressing mode to add to the opcode.
+	// A literal is cut to a 16-bit word, as SAM loads it.
+	private static int encodeOperand(final String operand, final Map<String, Integer> dataLabels, final int[] code, final int pc) {
+		if (operand.startsWith("#")) {
+			try {
+				code[pc + 2] = (short) Integer.parseInt(operand.substring(1));
+			} catch (NumberFormatException e) {
+				throw new SamError("Not a literal: " + operand, pc / SamMachine.WIDTH);
+			}
+			return SamMachine.LITERAL;
+		}
+		if (operand.startsWith("R")) {
+			code[pc + 2] = register(operand, operand);
+			return SamMachine.REGISTER;
+		}
+		Integer cell = dataLabels.get(operand);
+		if (cell == null) {
+			throw new SamError("Undefined data label: " + operand, pc / SamMachine.WIDTH);
+		}
+		code[pc + 2] = cell;
+		return SamMachine.MEMORY;
+	}
+
+	private static int register(final String operand, final String line) {
+		int register = operand.startsWith("R") ? Integer.parseInt(operand.substring(1)) : -1;
+		if (register < 0 || register >= SamMachine.REGISTERS) {
+			throw new SamError("Not a register: " + operand + " in " + line.trim(), -1);
+		}
+		return register;
+	}
+
+	// Splits a line into opcode and operands, or returns null for a blank or '%' line.
+	private static String[] fields(final String line) {
+		String text = line.trim();
+		if (text.isEmpty() || text.charAt(0) == '%') {
+			return null;
+		}
+		return text.split("[\\s,]+");
+	}
+
+	private static String operand(final String[] fields, final int which, final String line) {
+		if (fields.length <= which) {
+			throw new SamError("Missing operand in " + line.trim(), -1);
+		}
+		return fields[which];
+	}
+
+	private int[] code;
+	private int dataCells;
+	private int instructionCount;
+
+	static final int MAGIC = 0x53414D4F; // "SAMO"
+	static final int VERSION = 2; // 2: literals cut to 16 bits
+	static final int HEADER_SIZE = 16;
+
+	private static final Map<String, Integer> OPCODES = new HashMap<String, Integer>();
+	static {
+		String[] names = { "LD", "STO", "IA", "IS", "IM", "ID", "IC", "RDI", "WRI",
+				"JMP", "JLT", "JLE", "JEQ", "JNE", "JGE", "JGT", "WRNL", "HALT" };
+		int[] opcodes = { SamMachine.LD, SamMachine.STO, SamMachine.IA, SamMachine.IS, SamMachine.IM, SamMachine.ID, SamMachine.IC, SamMachine.RDI, SamMachine.WRI, SamMachine.JMP, SamMachine.JLT, SamMachine.JLE, SamMachine.JEQ, SamMachine.JNE, SamMachine.JGE, SamMachine.JGT, SamMachine.WRNL, SamMachine.HALT };
+		for (int i = 0; i < names.length; ++i) {
+			OPCODES.put(names[i], opcodes[i]);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.util.function.IntSupplier;
+
+// ------------------------------ SamCode ----------------------------
+// What SamCompiler's translated classes extend: the machine state between
+// chunks and the services the translated code calls.
+abstract class SamCode {
+	public void run(final IntSupplier input, final PrintWriter output) {
+		int[] memory = new int[dataCells];
+		int[] registers = new int[SamMachine.REGISTERS + 1]; // and the IC condition after them
+		for (SamCode part : parts) {
+			part.memory = memory;
+			part.registers = registers;
+			part.input = input;
+			part.output = output;
+		}
+		int next = 0;
+		do {
+			next = parts[partOf[next >>> SamCompiler.ENTRY_BITS]].resume(next);
+		} while (next >= 0);
+		output.flush();
+	}
+
+	// Runs from chunk next >>> ENTRY_BITS, entry next & (1 << ENTRY_BITS) - 1; -1 at HALT.
+	abstract int resume(int next);
+
+	int read() {
+		return (short) input.getAsInt();
+	}
+
+	void write(final int value) {
+		output.print(value);
+		output.print(' ');
+	}
+
+	void newLine() {
+		output.println();
+	}
+
+	static int ranOff(final int next) {
+		throw new SamError("Ran past the end of the code", -1);
+	}
+
+	static int divide(final int dividend, final int divisor) {
+		if (divisor == 0) {
+			throw new SamError("Division by zero", -1);
+		}
+		return (short) (dividend / divisor);
+	}
+
+	int dataCells;
+	SamCode[] parts; // The classes of one program, and the one each chunk is in
+	int[] partOf;
+	int[] memory;
+	int[] registers;
+	private IntSupplier input;
+	private PrintWriter output;
+}
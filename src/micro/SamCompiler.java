@@ -0,0 +1,502 @@
+package micro;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ------------------------------ SamCompiler ----------------------------
+// Translates assembled SAM code into JVM bytecode and loads it as a hidden
+// class, so HotSpot compiles MicroGCL programs to machine code.
+//
+// The code is cut into chunks of at most CHUNK_SIZE instructions, one method
+// each, small enough for the JIT to compile (HotSpot skips methods over 8000
+// bytes). Inside a chunk the registers R0-R15 and the IC condition are locals
+// and labels are branch targets. A jump to another chunk, and the end of a
+// chunk, leave through an exit that saves the registers and condition to the
+// shared SamCode arrays and returns where to resume: chunk << ENTRY_BITS | entry,
+// where the entries of a chunk are its first instruction and the jump targets
+// inside it. The data cells live in one int array, loaded into a local on entry.
+//
+// A class holds as many chunks as its constant pool and resume have room for; a big program
+// takes several classes, one SamCode part each, and SamCode.run finds the part
+// that has the chunk to resume.
+class SamCompiler {
+	public SamCompiler(final int[] code, final int dataCells, final int instructionCount) {
+		this.code = code;
+		this.dataCells = dataCells;
+		this.instructions = instructionCount;
+	}
+
+	public SamCode load() {
+		List<byte[]> classes = classFiles();
+		SamCode[] parts = new SamCode[classes.size()];
+		try {
+			for (int part = 0; part < parts.length; ++part) {
+				MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classes.get(part), true);
+				parts[part] = (SamCode) lookup.findConstructor(lookup.lookupClass(),
+						MethodType.methodType(void.class)).invoke();
+			}
+		} catch (Throwable e) {
+			throw new SamError("Could not load translated code: " + e, -1);
+		}
+		SamCode translated = parts[0];
+		translated.parts = parts;
+		translated.partOf = partOf;
+		translated.dataCells = dataCells;
+		return translated;
+	}
+
+	// ---- Translation ----
+
+	private List<byte[]> classFiles() {
+		chunks = Math.max(1, (instructions + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		if (chunks > Integer.MAX_VALUE >> ENTRY_BITS) { // Past the last chunk still resumes at a positive next.
+			throw new SamError("Too many instructions to translate: " + instructions, -1);
+		}
+		// Every jump target in the code becomes an entry of its chunk; entry 0 is
+		// the chunk's start. A jump to the end of the code leaves for past the last
+		// chunk instead.
+		entries = new int[instructions + 1];
+		Arrays.fill(entries, -1);
+		int[] entryCount = new int[chunks + 1];
+		for (int chunk = 0; chunk < chunks; ++chunk) {
+			entries[chunk * CHUNK_SIZE] = 0;
+			entryCount[chunk] = 1;
+		}
+		for (int i = 0; i < instructions; ++i) {
+			int op = code[i * SamMachine.WIDTH];
+			if (op >= SamMachine.JMP && op <= SamMachine.JGT) {
+				int target = code[i * SamMachine.WIDTH + 2] / SamMachine.WIDTH;
+				if (target < instructions && entries[target] < 0) {
+					entries[target] = entryCount[target / CHUNK_SIZE]++;
+				}
+			}
+		}
+		partOf = new int[chunks + 1];
+		List<byte[]> classes = new ArrayList<byte[]>();
+		List<byte[]> methods = null;
+		int firstChunk = 0;
+		for (int chunk = 0; chunk < chunks; ++chunk) {
+			if (methods == null) {
+				pool = new ConstantPool();
+				pool.utf8("Code");
+				methods = new ArrayList<byte[]>();
+				methods.add(constructor());
+				firstChunk = chunk;
+			}
+			methods.add(chunk(chunk, entryCount[chunk]));
+			partOf[chunk] = classes.size();
+			// Room for one more chunk, and for resume's references to them all?
+			if (chunk + 1 == chunks || chunk + 1 - firstChunk == CHUNKS_PER_CLASS
+					|| pool.size() + 2 * (chunk + 2 - firstChunk) + RESUME_ENTRIES + CHUNK_ENTRIES > MAX_POOL_ENTRIES) {
+				methods.add(resume(firstChunk, chunk + 1));
+				classes.add(classFile(methods));
+				methods = null;
+			}
+		}
+		partOf[chunks] = classes.size() - 1; // Past the end: its resume reports running off the code.
+		return classes;
+	}
+
+	private byte[] classFile(final List<byte[]> methods) {
+		if (methods.size() > 0xffff) {
+			throw new SamError("Too many methods for one class: " + methods.size(), -1);
+		}
+		Bytes classFile = new Bytes();
+		classFile.u4(0xCAFEBABE).u2(0).u2(49); // Java 5 class files verify without stack maps.
+		int thisClass = pool.classRef(CLASS_NAME);
+		int superClass = pool.classRef(BASE_NAME);
+		pool.write(classFile);
+		classFile.u2(0x0030).u2(thisClass).u2(superClass).u2(0).u2(0); // final super; no interfaces or fields
+		classFile.u2(methods.size());
+		for (byte[] method : methods) {
+			classFile.bytes(method);
+		}
+		classFile.u2(0);
+		return classFile.toArray();
+	}
+
+	private byte[] constructor() {
+		Bytes body = new Bytes();
+		body.u1(ALOAD_0).u1(INVOKESPECIAL).u2(pool.methodRef(BASE_NAME, "<init>", "()V")).u1(RETURN);
+		return method("<init>", "()V", body, 1, 1);
+	}
+
+	// int resume(int next): calls the chunk, from first to end, named by next's
+	// upper bits with the entry in its lower ENTRY_BITS.
+	private byte[] resume(final int first, final int end) {
+		Bytes body = new Bytes();
+		body.u1(ILOAD_1).u1(BIPUSH).u1(ENTRY_BITS).u1(IUSHR);
+		int switchAt = body.size();
+		body.u1(TABLESWITCH);
+		while (body.size() % 4 != 0) {
+			body.u1(0);
+		}
+		int defaultAt = body.size();
+		body.u4(0).u4(first).u4(end - 1);
+		int tableAt = body.size();
+		for (int chunk = first; chunk < end; ++chunk) {
+			body.u4(0);
+		}
+		for (int chunk = first; chunk < end; ++chunk) {
+			body.patch4(tableAt + (chunk - first) * 4, body.size() - switchAt);
+			body.u1(ALOAD_0).u1(ILOAD_1);
+			pushInt(body, (1 << ENTRY_BITS) - 1);
+			body.u1(IAND);
+			body.u1(INVOKEVIRTUAL).u2(pool.methodRef(CLASS_NAME, "chunk" + chunk, "(I)I")).u1(IRETURN);
+		}
+		body.patch4(defaultAt, body.size() - switchAt);
+		body.u1(ILOAD_1).u1(INVOKESTATIC).u2(pool.methodRef(BASE_NAME, "ranOff", "(I)I")).u1(IRETURN);
+		return method("resume", "(I)I", body, 3, 2);
+	}
+
+	private byte[] chunk(final int chunk, final int entryCount) {
+		int first = chunk * CHUNK_SIZE;
+		int last = Math.min(instructions, first + CHUNK_SIZE);
+		Bytes body = new Bytes();
+		// Prologue: memory, registers and condition into locals.
+		body.u1(ALOAD_0).u1(GETFIELD).u2(pool.fieldRef(BASE_NAME, "memory", "[I")).u1(ASTORE).u1(MEMORY);
+		body.u1(ALOAD_0).u1(GETFIELD).u2(pool.fieldRef(BASE_NAME, "registers", "[I")).u1(ASTORE).u1(REGISTERS);
+		for (int r = 0; r < SamMachine.REGISTERS; ++r) {
+			body.u1(ALOAD).u1(REGISTERS);
+			pushInt(body, r);
+			body.u1(IALOAD).u1(ISTORE).u1(R0 + r);
+		}
+		body.u1(ALOAD).u1(REGISTERS);
+		pushInt(body, SamMachine.REGISTERS);
+		body.u1(IALOAD).u1(ISTORE).u1(CONDITION);
+		body.u1(ICONST_M1).u1(ISTORE).u1(NEXT); // Set on every path to the exit.
+		// Entry switch.
+		int[] entryOffsets = new int[entryCount];
+		body.u1(ILOAD_1);
+		int switchAt = body.size();
+		body.u1(TABLESWITCH);
+		while (body.size() % 4 != 0) {
+			body.u1(0);
+		}
+		int defaultAt = body.size();
+		body.u4(0).u4(0).u4(entryCount - 1);
+		int tableAt = body.size();
+		for (int e = 0; e < entryCount; ++e) {
+			body.u4(0);
+		}
+		int[] offsets = new int[last - first + 1]; // bytecode offset of each instruction
+		List<int[]> branches = new ArrayList<int[]>(); // {opcode at, target instruction}
+		List<Integer> exits = new ArrayList<Integer>(); // goto-exit offsets to patch
+		for (int i = first; i < last; ++i) {
+			offsets[i - first] = body.size();
+			if (entries[i] >= 0) {
+				entryOffsets[entries[i]] = body.size();
+			}
+			int pc = i * SamMachine.WIDTH;
+			int op = code[pc];
+			int register = R0 + code[pc + 1];
+			int operand = code[pc + 2];
+			int mode = op & 3;
+			switch (op & ~3) {
+			case SamMachine.LD:
+				pushOperand(body, mode, operand);
+				body.u1(ISTORE).u1(register);
+				break;
+			case SamMachine.STO:
+				if (mode == SamMachine.REGISTER) {
+					body.u1(ILOAD).u1(register).u1(ISTORE).u1(R0 + operand);
+				} else {
+					body.u1(ALOAD).u1(MEMORY);
+					pushInt(body, operand);
+					body.u1(ILOAD).u1(register).u1(IASTORE);
+				}
+				break;
+			case SamMachine.IA:
+			case SamMachine.IS:
+			case SamMachine.IM:
+				body.u1(ILOAD).u1(register);
+				pushOperand(body, mode, operand);
+				body.u1((op & ~3) == SamMachine.IA ? IADD : (op & ~3) == SamMachine.IS ? ISUB : IMUL).u1(I2S);
+				body.u1(ISTORE).u1(register);
+				break;
+			case SamMachine.ID:
+				body.u1(ILOAD).u1(register);
+				pushOperand(body, mode, operand);
+				body.u1(INVOKESTATIC).u2(pool.methodRef(BASE_NAME, "divide", "(II)I"));
+				body.u1(ISTORE).u1(register);
+				break;
+			case SamMachine.IC:
+				body.u1(ILOAD).u1(register);
+				pushOperand(body, mode, operand);
+				body.u1(INVOKESTATIC).u2(pool.methodRef("java/lang/Integer", "compare", "(II)I"));
+				body.u1(ISTORE).u1(CONDITION);
+				break;
+			case SamMachine.RDI:
+				if (mode == SamMachine.REGISTER) {
+					body.u1(ALOAD_0).u1(INVOKEVIRTUAL).u2(pool.methodRef(BASE_NAME, "read", "()I"));
+					body.u1(ISTORE).u1(R0 + operand);
+				} else {
+					body.u1(ALOAD).u1(MEMORY);
+					pushInt(body, operand);
+					body.u1(ALOAD_0).u1(INVOKEVIRTUAL).u2(pool.methodRef(BASE_NAME, "read", "()I"));
+					body.u1(IASTORE);
+				}
+				break;
+			case SamMachine.WRI:
+				body.u1(ALOAD_0);
+				pushOperand(body, mode, operand);
+				body.u1(INVOKEVIRTUAL).u2(pool.methodRef(BASE_NAME, "write", "(I)V"));
+				break;
+			default:
+				if (op == SamMachine.WRNL) {
+					body.u1(ALOAD_0).u1(INVOKEVIRTUAL).u2(pool.methodRef(BASE_NAME, "newLine", "()V"));
+				} else if (op == SamMachine.HALT) {
+					body.u1(ICONST_M1).u1(ISTORE).u1(NEXT);
+					exits.add(gotoForward(body));
+				} else {
+					int target = operand / SamMachine.WIDTH;
+					boolean local = target >= first && target < last;
+					if (op == SamMachine.JMP) {
+						if (local) {
+							branches.add(new int[] { body.size(), target });
+							body.u1(GOTO).u2(0);
+						} else {
+							leave(body, target, exits);
+						}
+					} else if (local) {
+						body.u1(ILOAD).u1(CONDITION);
+						branches.add(new int[] { body.size(), target });
+						body.u1(JUMP_IF[op - SamMachine.JMP]).u2(0);
+					} else {
+						body.u1(ILOAD).u1(CONDITION);
+						int skipAt = body.size();
+						body.u1(JUMP_UNLESS[op - SamMachine.JMP]).u2(0);
+						leave(body, target, exits);
+						body.patch2(skipAt + 1, body.size() - skipAt);
+					}
+				}
+				break;
+			}
+		}
+		// Falling off the end of the chunk resumes the next one. Past the last
+		// chunk, resume reports running off the end of the code.
+		pushInt(body, (chunk + 1) << ENTRY_BITS);
+		body.u1(ISTORE).u1(NEXT);
+		// Exit: save the registers and condition, return next.
+		int exitAt = body.size();
+		for (int r = 0; r < SamMachine.REGISTERS; ++r) {
+			body.u1(ALOAD).u1(REGISTERS);
+			pushInt(body, r);
+			body.u1(ILOAD).u1(R0 + r).u1(IASTORE);
+		}
+		body.u1(ALOAD).u1(REGISTERS);
+		pushInt(body, SamMachine.REGISTERS);
+		body.u1(ILOAD).u1(CONDITION).u1(IASTORE);
+		body.u1(ILOAD).u1(NEXT).u1(IRETURN);
+		for (int[] branch : branches) {
+			body.patch2(branch[0] + 1, offsets[branch[1] - first] - branch[0]);
+		}
+		for (int at : exits) {
+			body.patch2(at + 1, exitAt - at);
+		}
+		body.patch4(defaultAt, exitAt - switchAt); // Unreachable: resume only passes known entries.
+		for (int e = 0; e < entryCount; ++e) {
+			body.patch4(tableAt + e * 4, entryOffsets[e] - switchAt);
+		}
+		if (body.size() > 0xffff) {
+			throw new SamError("Chunk " + chunk + " does not fit a JVM method", first);
+		}
+		return method("chunk" + chunk, "(I)I", body, 4, LOCALS);
+	}
+
+	// Leaves the chunk to resume at target, in another chunk or past the last.
+	private void leave(final Bytes body, final int target, final List<Integer> exits) {
+		pushInt(body, target >= instructions ? chunks << ENTRY_BITS : (target / CHUNK_SIZE) << ENTRY_BITS | entries[target]);
+		body.u1(ISTORE).u1(NEXT);
+		exits.add(gotoForward(body));
+	}
+
+	private static int gotoForward(final Bytes body) {
+		int at = body.size();
+		body.u1(GOTO).u2(0);
+		return at;
+	}
+
+	private void pushOperand(final Bytes body, final int mode, final int operand) {
+		if (mode == SamMachine.REGISTER) {
+			body.u1(ILOAD).u1(R0 + operand);
+		} else if (mode == SamMachine.LITERAL) {
+			pushInt(body, operand);
+		} else {
+			body.u1(ALOAD).u1(MEMORY);
+			pushInt(body, operand);
+			body.u1(IALOAD);
+		}
+	}
+
+	private void pushInt(final Bytes body, final int value) {
+		if (value >= -1 && value <= 5) {
+			body.u1(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			body.u1(BIPUSH).u1(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			body.u1(SIPUSH).u2(value);
+		} else {
+			body.u1(LDC_W).u2(pool.integer(value));
+		}
+	}
+
+	private byte[] method(final String name, final String descriptor, final Bytes body, final int maxStack, final int maxLocals) {
+		Bytes method = new Bytes();
+		method.u2(name.equals("<init>") ? 0x0001 : 0x0000).u2(pool.utf8(name)).u2(pool.utf8(descriptor)).u2(1);
+		method.u2(pool.utf8("Code")).u4(12 + body.size());
+		method.u2(maxStack).u2(maxLocals).u4(body.size()).bytes(body.toArray()).u2(0).u2(0);
+		return method.toArray();
+	}
+
+	private final int[] code;
+	private final int instructions;
+	private final int dataCells;
+	private int chunks; // of the code; resuming at chunks << ENTRY_BITS runs off its end
+	private int[] entries; // entry number of each instruction in its chunk, -1 if none
+	private int[] partOf; // class of each chunk, and of the end past the last
+	private ConstantPool pool; // of the class being written
+
+	static final int CHUNK_SIZE = 256; // instructions per method
+	static final int ENTRY_BITS = 8; // of a resume point: a chunk has at most CHUNK_SIZE entries
+
+	// resume takes 14 bytes of code per chunk, and a method has 64K at most.
+	private static final int CHUNKS_PER_CLASS = 4096;
+	// A class file counts its constants in 16 bits. A chunk adds at most one
+	// constant per instruction, its name and the first uses of the SamCode
+	// members; resume adds two per chunk and a few of its own.
+	private static final int MAX_POOL_ENTRIES = 0xffff - 1;
+	private static final int CHUNK_ENTRIES = CHUNK_SIZE + 64;
+	private static final int RESUME_ENTRIES = 16;
+
+	private static final String BASE_NAME = "micro/SamCode";
+	private static final String CLASS_NAME = "micro/SamCode$Translated";
+
+	// Locals of a chunk method. 0 is this and 1 the entry.
+	private static final int MEMORY = 2, REGISTERS = 3, R0 = 4, CONDITION = R0 + SamMachine.REGISTERS, NEXT = CONDITION + 1;
+	private static final int LOCALS = NEXT + 1;
+
+	// The JVM opcodes used.
+	private static final int ICONST_M1 = 0x02, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+	private static final int ILOAD = 0x15, ALOAD = 0x19, ILOAD_1 = 0x1b, ALOAD_0 = 0x2a, IALOAD = 0x2e;
+	private static final int ISTORE = 0x36, ASTORE = 0x3a, IASTORE = 0x4f;
+	private static final int IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IUSHR = 0x7c, IAND = 0x7e, I2S = 0x93;
+	private static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+	private static final int GOTO = 0xa7, TABLESWITCH = 0xaa, IRETURN = 0xac, RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+	// By SAM jump, JMP through JGT: the test that takes it, and the one that does not.
+	private static final int[] JUMP_IF = { GOTO, IFLT, IFLE, IFEQ, IFNE, IFGE, IFGT };
+	private static final int[] JUMP_UNLESS = { 0, IFGE, IFGT, IFNE, IFEQ, IFLT, IFLE };
+
+	// ---- Class file plumbing ----
+
+	private static final class Bytes {
+		Bytes u1(final int value) {
+			ensure(1);
+			data[size++] = (byte) value;
+			return this;
+		}
+
+		Bytes u2(final int value) {
+			return u1(value >>> 8).u1(value);
+		}
+
+		Bytes u4(final int value) {
+			return u2(value >>> 16).u2(value);
+		}
+
+		Bytes bytes(final byte[] values) {
+			ensure(values.length);
+			System.arraycopy(values, 0, data, size, values.length);
+			size += values.length;
+			return this;
+		}
+
+		void patch2(final int at, final int value) {
+			data[at] = (byte) (value >>> 8);
+			data[at + 1] = (byte) value;
+		}
+
+		void patch4(final int at, final int value) {
+			patch2(at, value >>> 16);
+			patch2(at + 2, value);
+		}
+
+		int size() {
+			return size;
+		}
+
+		byte[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+
+		private void ensure(final int more) {
+			if (size + more > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + more));
+			}
+		}
+
+		private byte[] data = new byte[256];
+		private int size = 0;
+	}
+
+	private static final class ConstantPool {
+		int utf8(final String value) {
+			return entry("U" + value, new Bytes().u1(1).u2(value.length()).bytes(value.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+		}
+
+		int integer(final int value) {
+			return entry("I" + value, new Bytes().u1(3).u4(value));
+		}
+
+		int classRef(final String name) {
+			return entry("C" + name, new Bytes().u1(7).u2(utf8(name)));
+		}
+
+		int methodRef(final String owner, final String name, final String descriptor) {
+			return entry("M" + owner + "." + name + descriptor, new Bytes().u1(10).u2(classRef(owner)).u2(nameAndType(name, descriptor)));
+		}
+
+		int fieldRef(final String owner, final String name, final String descriptor) {
+			return entry("F" + owner + "." + name + descriptor, new Bytes().u1(9).u2(classRef(owner)).u2(nameAndType(name, descriptor)));
+		}
+
+		int size() {
+			return entries.size();
+		}
+
+		void write(final Bytes classFile) {
+			if (entries.size() > MAX_POOL_ENTRIES) {
+				throw new SamError("Too many constants for one class: " + entries.size(), -1);
+			}
+			classFile.u2(entries.size() + 1);
+			for (Bytes entry : entries) {
+				classFile.bytes(entry.toArray());
+			}
+		}
+
+		private int nameAndType(final String name, final String descriptor) {
+			return entry("N" + name + ":" + descriptor, new Bytes().u1(12).u2(utf8(name)).u2(utf8(descriptor)));
+		}
+
+		private int entry(final String key, final Bytes entry) {
+			Integer index = indices.get(key);
+			if (index == null) {
+				entries.add(entry);
+				index = entries.size();
+				indices.put(key, index);
+			}
+			return index;
+		}
+
+		private final Map<String, Integer> indices = new HashMap<String, Integer>();
+		private final List<Bytes> entries = new ArrayList<Bytes>();
+	}
+}
@@ -0,0 +1,11 @@
+package micro;
+
+// ------------------------------ SamError ----------------------------
+// A SAM program that cannot be loaded or stopped abnormally.
+class SamError extends RuntimeException {
+	public SamError(final String message, final int instruction) {
+		super(instruction < 0 ? message : message + " (instruction " + instruction + ")");
+	}
+
+	private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,251 @@
+package micro;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+// ------------------------------ SamMachine ----------------------------
+// Runs the SAM code CodeGenerator emits, without the native sam3 simulator.
+// SamAssembler decodes the text into a flat int array, three ints per
+// instruction: an opcode that already says how to fetch the operand, a register
+// number, and the operand (register, data cell, literal or resolved jump target).
+// Words are 16 bits, as on SAM, literals included: SamAssembler cuts them to 16.
+class SamMachine {
+	public SamMachine(final List<String> lines) {
+		this(new SamAssembler(lines));
+	}
+
+	public SamMachine(final SamAssembler program) {
+		this(program.code(), program.dataCells(), program.instructionCount());
+	}
+
+	private SamMachine(final int[] code, final int dataCells, final int instructionCount) {
+		this.code = code;
+		this.dataCells = dataCells;
+		this.instructionCount = instructionCount;
+	}
+
+	// Loads a SAM object file written by SamAssembler.write: the code is mapped
+	// and copied in bulk, with nothing left to parse or resolve.
+	public static SamMachine map(final Path objectFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(objectFile, StandardOpenOption.READ)) {
+			MappedByteBuffer object = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (object.remaining() < SamAssembler.HEADER_SIZE || object.getInt() != SamAssembler.MAGIC) {
+				throw new SamError("Not a SAM object file: " + objectFile, -1);
+			}
+			int version = object.getInt();
+			if (version != SamAssembler.VERSION) {
+				throw new SamError("SAM object version " + version + ", expected " + SamAssembler.VERSION, -1);
+			}
+			int instructionCount = object.getInt();
+			int dataCells = object.getInt();
+			long codeBytes = ((long) instructionCount + 1) * WIDTH * 4;
+			if (instructionCount < 0 || codeBytes > Integer.MAX_VALUE || codeBytes != object.remaining()) {
+				throw new SamError("Corrupt SAM object file: " + instructionCount + " instructions in "
+						+ object.remaining() + " bytes of code", -1);
+			}
+			if (dataCells < 0 || dataCells > MAX_DATA_CELLS) {
+				throw new SamError("Corrupt SAM object file: " + dataCells + " data cells", -1);
+			}
+			int[] code = new int[(instructionCount + 1) * WIDTH];
+			object.asIntBuffer().get(code);
+			verify(code, dataCells, instructionCount);
+			return new SamMachine(code, dataCells, instructionCount);
+		}
+	}
+
+	// Checks that decoded code only does what SamAssembler could have written:
+	// known opcodes, registers, data cells and jump targets in range, and the
+	// slot past the last instruction left empty.
+	private static void verify(final int[] code, final int dataCells, final int instructionCount) {
+		for (int pc = 0; pc < instructionCount * WIDTH; pc += WIDTH) {
+			int op = code[pc];
+			int operand = code[pc + 2];
+			boolean valid;
+			if (op >= JMP && op <= JGT) {
+				valid = operand >= 0 && operand <= instructionCount * WIDTH && operand % WIDTH == 0;
+			} else if (op == WRNL || op == HALT) {
+				valid = true;
+			} else if (op < LD || op > WRI + REGISTER || (op & 3) > REGISTER || op == STO + LITERAL || op == RDI + LITERAL
+					|| code[pc + 1] < 0 || code[pc + 1] >= REGISTERS) {
+				valid = false;
+			} else if ((op & 3) == LITERAL) {
+				valid = operand == (short) operand;
+			} else if ((op & 3) == REGISTER) {
+				valid = operand >= 0 && operand < REGISTERS;
+			} else {
+				valid = operand >= 0 && operand < dataCells;
+			}
+			if (!valid) {
+				throw new SamError("Corrupt SAM object file: bad instruction", pc / WIDTH);
+			}
+		}
+		if (code[instructionCount * WIDTH] != 0) {
+			throw new SamError("Corrupt SAM object file: no end after the last instruction", instructionCount);
+		}
+	}
+
+	// Loads either a SAM object file or a SAM text listing.
+	public static SamMachine load(final Path file) throws IOException {
+		if (SamAssembler.isObject(file)) {
+			return map(file);
+		}
+		try (Reader listing = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+			return load(listing);
+		}
+	}
+
+	// Decodes a SAM listing such as a codefile: '%' lines are the echoed source.
+	public static SamMachine load(final Reader listing) throws IOException {
+		BufferedReader in = new BufferedReader(listing);
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = in.readLine()) != null) {
+			lines.add(line);
+		}
+		return new SamMachine(lines);
+	}
+
+	// Runs the program from its first instruction to HALT. RDI takes its values from
+	// input, WRI writes each value followed by a blank and WRNL ends the line.
+	public void run(final IntSupplier input, final PrintWriter output) {
+		final int[] code = this.code;
+		final int[] registers = new int[REGISTERS];
+		final int[] memory = new int[dataCells];
+		int condition = 0; // Sign of the last IC comparison.
+		long executed = 0;
+		int pc = 0;
+		while (true) {
+			executed++;
+			switch (code[pc]) {
+			case LD_MEMORY: registers[code[pc + 1]] = memory[code[pc + 2]]; break;
+			case LD_LITERAL: registers[code[pc + 1]] = code[pc + 2]; break;
+			case LD_REGISTER: registers[code[pc + 1]] = registers[code[pc + 2]]; break;
+			case STO_MEMORY: memory[code[pc + 2]] = registers[code[pc + 1]]; break;
+			case STO_REGISTER: registers[code[pc + 2]] = registers[code[pc + 1]]; break;
+			case IA_MEMORY: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] + memory[code[pc + 2]]); break;
+			case IA_LITERAL: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] + code[pc + 2]); break;
+			case IA_REGISTER: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] + registers[code[pc + 2]]); break;
+			case IS_MEMORY: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] - memory[code[pc + 2]]); break;
+			case IS_LITERAL: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] - code[pc + 2]); break;
+			case IS_REGISTER: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] - registers[code[pc + 2]]); break;
+			case IM_MEMORY: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] * memory[code[pc + 2]]); break;
+			case IM_LITERAL: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] * code[pc + 2]); break;
+			case IM_REGISTER: registers[code[pc + 1]] = (short) (registers[code[pc + 1]] * registers[code[pc + 2]]); break;
+			case ID_MEMORY: registers[code[pc + 1]] = divide(registers[code[pc + 1]], memory[code[pc + 2]], pc); break;
+			case ID_LITERAL: registers[code[pc + 1]] = divide(registers[code[pc + 1]], code[pc + 2], pc); break;
+			case ID_REGISTER: registers[code[pc + 1]] = divide(registers[code[pc + 1]], registers[code[pc + 2]], pc); break;
+			case IC_MEMORY: condition = Integer.compare(registers[code[pc + 1]], memory[code[pc + 2]]); break;
+			case IC_LITERAL: condition = Integer.compare(registers[code[pc + 1]], code[pc + 2]); break;
+			case IC_REGISTER: condition = Integer.compare(registers[code[pc + 1]], registers[code[pc + 2]]); break;
+			case JMP: pc = code[pc + 2]; continue;
+			case JLT: if (condition < 0) { pc = code[pc + 2]; continue; } break;
+			case JLE: if (condition <= 0) { pc = code[pc + 2]; continue; } break;
+			case JEQ: if (condition == 0) { pc = code[pc + 2]; continue; } break;
+			case JNE: if (condition != 0) { pc = code[pc + 2]; continue; } break;
+			case JGE: if (condition >= 0) { pc = code[pc + 2]; continue; } break;
+			case JGT: if (condition > 0) { pc = code[pc + 2]; continue; } break;
+			case RDI_MEMORY: memory[code[pc + 2]] = (short) input.getAsInt(); break;
+			case RDI_REGISTER: registers[code[pc + 2]] = (short) input.getAsInt(); break;
+			case WRI_MEMORY: output.print(memory[code[pc + 2]]); output.print(' '); break;
+			case WRI_LITERAL: output.print(code[pc + 2]); output.print(' '); break;
+			case WRI_REGISTER: output.print(registers[code[pc + 2]]); output.print(' '); break;
+			case WRNL: output.println(); break;
+			case HALT:
+				output.flush();
+				this.executed = executed;
+				return;
+			default:
+				throw new SamError("Ran past the end of the code", pc / WIDTH);
+			}
+			pc += WIDTH;
+		}
+	}
+
+	// The same program as JVM bytecode, to run at compiled speed.
+	public SamCode translate() {
+		return new SamCompiler(code, dataCells, instructionCount).load();
+	}
+
+	// RDI input: whitespace separated integers read from in.
+	public static IntSupplier integers(final Reader in) {
+		final BufferedReader lines = new BufferedReader(in);
+		return new IntSupplier() {
+			public int getAsInt() {
+				try {
+					while (next >= values.length) {
+						String line = lines.readLine();
+						if (line == null) {
+							throw new SamError("RDI: no more input", -1);
+						}
+						line = line.trim();
+						values = line.isEmpty() ? new String[0] : line.split("\\s+");
+						next = 0;
+					}
+					return Integer.parseInt(values[next++]);
+				} catch (IOException e) {
+					throw new SamError("RDI: " + e, -1);
+				} catch (NumberFormatException e) {
+					throw new SamError("RDI: not an integer: " + values[next - 1], -1);
+				}
+			}
+
+			private String[] values = new String[0];
+			private int next = 0;
+		};
+	}
+
+	public long instructionsExecuted() { // By the last run.
+		return executed;
+	}
+
+	public int instructionCount() {
+		return instructionCount;
+	}
+
+	private static int divide(final int dividend, final int divisor, final int pc) {
+		if (divisor == 0) {
+			throw new SamError("Division by zero", pc / WIDTH);
+		}
+		return (short) (dividend / divisor);
+	}
+
+	private final int[] code;
+	private final int dataCells;
+	private final int instructionCount;
+	private long executed = 0;
+
+	static final int WIDTH = 3; // ints per decoded instruction
+	static final int REGISTERS = 16;
+	static final int WORD_SIZE = 2; // bytes, as in SKIP operands
+	static final int MAX_DATA_CELLS = 1 << 26; // A mapped object may ask for no more memory than this
+
+	// Addressing modes, added to an opcode that takes a general operand.
+	static final int MEMORY = 0;
+	static final int LITERAL = 1;
+	static final int REGISTER = 2;
+
+	// Opcodes, 0 is left unused. Changing them changes SamAssembler.VERSION. Those with general operands are spaced by 4 to take a mode.
+	static final int LD = 4, LD_MEMORY = LD + MEMORY, LD_LITERAL = LD + LITERAL, LD_REGISTER = LD + REGISTER;
+	static final int STO = 8, STO_MEMORY = STO + MEMORY, STO_REGISTER = STO + REGISTER;
+	static final int IA = 12, IA_MEMORY = IA + MEMORY, IA_LITERAL = IA + LITERAL, IA_REGISTER = IA + REGISTER;
+	static final int IS = 16, IS_MEMORY = IS + MEMORY, IS_LITERAL = IS + LITERAL, IS_REGISTER = IS + REGISTER;
+	static final int IM = 20, IM_MEMORY = IM + MEMORY, IM_LITERAL = IM + LITERAL, IM_REGISTER = IM + REGISTER;
+	static final int ID = 24, ID_MEMORY = ID + MEMORY, ID_LITERAL = ID + LITERAL, ID_REGISTER = ID + REGISTER;
+	static final int IC = 28, IC_MEMORY = IC + MEMORY, IC_LITERAL = IC + LITERAL, IC_REGISTER = IC + REGISTER;
+	static final int RDI = 32, RDI_MEMORY = RDI + MEMORY, RDI_REGISTER = RDI + REGISTER;
+	static final int WRI = 36, WRI_MEMORY = WRI + MEMORY, WRI_LITERAL = WRI + LITERAL, WRI_REGISTER = WRI + REGISTER;
+	static final int JMP = 40, JLT = 41, JLE = 42, JEQ = 43, JNE = 44, JGE = 45, JGT = 46;
+	static final int WRNL = 47;
+	static final int HALT = 48;
+}
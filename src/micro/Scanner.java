@@ -0,0 +1,210 @@
+package micro;
+
+import java.util.Arrays;
+
+// ------------------------------ Scanner -------------------------------
+// Scans whole lines of source in place into a TokenStream.Block: each token's
+// kind and where it is spelled, where each line starts and ends, and the
+// lexical errors. Tokens are recognized by a DFA over character classes, its
+// transition table generated below from Token.OPERATORS, the identifier and
+// literal spellings and COMMENT.
+class Scanner {
+	// Scans text[from, to): whole lines, the last ending with a terminator or with the source.
+	public Scanner(final char[] text, final int from, final int to, final TokenStream.Block tokens) {
+		this.window = text;
+		this.nextLine = from;
+		this.windowLength = to;
+		this.tokens = tokens;
+	}
+
+	public void scan() { // Adds every token to tokens.
+		for (int kind = getNextToken(); kind != Kind.EOF; kind = getNextToken()) {
+			tokens.add(kind, tokenStart, tokenLength);
+		}
+	}
+
+	private final char[] window; // Source text; lines are scanned in place.
+	private final int windowLength; // End of the text to scan
+	private final TokenStream.Block tokens;
+	private int nextLine; // Start of the first unscanned line
+	private int lineEnd = 0; // The current line is [.., lineEnd) followed by a virtual blank.
+	private int linePointer = 1;
+	private int tokenStart = 0;
+	private int tokenLength = 0;
+	private boolean EOF = false;
+
+	private void getNewLine() {
+		int lineStart = nextLine;
+		if (lineStart == windowLength) {
+			EOF = true;
+			linePointer = lineEnd = windowLength;
+			return;
+		}
+		int scan = lineStart;
+		while (scan < windowLength && window[scan] != '\n' && window[scan] != '\r') {
+			scan++;
+		}
+		lineEnd = scan;
+		if (scan < windowLength) {
+			if (window[scan] == '\r' && scan + 1 < windowLength && window[scan + 1] == '\n') {
+				scan++;
+			}
+			scan++;
+		}
+		nextLine = scan;
+		tokens.line(lineStart, lineEnd);
+		linePointer = lineStart;
+	}
+
+	private char inspect() {
+		if (linePointer > lineEnd) {
+			getNewLine();
+		}
+		return linePointer < lineEnd ? window[linePointer] : blank;
+	}
+
+	private void advance() {
+		linePointer++;
+	}
+
+	private char getNextChar() {
+		char character = inspect();
+		advance();
+		return character;
+	}
+
+	private int checkReserved() {
+		return Token.reserved(window, tokenStart, tokenLength);
+	}
+
+	private void lexicalError(final char character) {
+		tokens.error("Lexical Error Detected at '" + character + "'");
+	}
+
+	// Takes the longest run of characters the DFA accepts from a character that
+	// starts a token. A character that cannot start one is an error; so is a run
+	// that stops short of a token (":" but not ":="), at the character it stops at.
+	private int getNextToken() {
+		while (!EOF) {
+			char first = getNextChar();
+			tokenStart = linePointer - 1;
+			int state = TRANSITIONS[classOf(first)]; // From START; a state is where its row starts.
+			if (state == START) { // A blank
+				continue;
+			}
+			if (state == STOP) {
+				lexicalError(first);
+				continue;
+			}
+			int next;
+			while ((next = TRANSITIONS[state + classOf(peek())]) != STOP) {
+				state = next;
+				linePointer++;
+			}
+			int kind = ACCEPTS[state / CLASSES];
+			if (kind >= 0) {
+				tokenLength = linePointer - tokenStart;
+				return kind == Kind.IDENTIFIER ? checkReserved() : kind;
+			} else if (kind == SKIP_LINE) {
+				getNewLine();
+			} else {
+				lexicalError(inspect());
+			}
+		}
+		tokenLength = 0;
+		return Kind.EOF;
+	}
+
+	private char peek() { // inspect() within a token, which never goes past the end of its line
+		return linePointer < lineEnd ? window[linePointer] : blank;
+	}
+
+	private static int classOf(final char character) {
+		return character < CLASS_OF.length ? CLASS_OF[character] : OTHER;
+	}
+
+	static final char blank = ' ';
+
+	// ---- The token specification ----
+	// Besides Token.OPERATORS, which are spelled with none of these characters:
+	static final String BLANKS = " \t";
+	static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"; // An identifier is a letter,
+	static final String DIGITS = "0123456789"; // then letters, digits and
+	static final char UNDERSCORE = '_'; // underscores; a literal is digits.
+	static final String COMMENT = "--"; // Starts a comment to the end of the line
+
+	// Character classes, then those of the characters operators are spelled with
+	private static final int BLANK = 0, LETTER = 1, DIGIT = 2, CONTINUES = 3, OTHER = 4;
+	// States: START, those of identifiers and literals, then one for each prefix of an operator or COMMENT
+	private static final int STOP = -1, START = 0, IN_IDENTIFIER = 1, IN_LITERAL = 2;
+	// What a run ending in a state makes, besides a Kind
+	private static final int NO_TOKEN = -1, SKIP_LINE = -2;
+
+	private static final byte[] CLASS_OF = new byte[128];
+	private static final int CLASSES;
+	private static final short[] TRANSITIONS; // Row by state, column by class: where the next state's row starts, or STOP
+	private static final int[] ACCEPTS;
+
+	static {
+		Arrays.fill(CLASS_OF, (byte) OTHER);
+		classify(BLANKS, BLANK);
+		classify(LETTERS, LETTER);
+		classify(DIGITS, DIGIT);
+		classify(String.valueOf(UNDERSCORE), CONTINUES);
+		String[] spellings = new String[Token.OPERATORS.length + 1];
+		int[] kinds = new int[spellings.length];
+		int length = 0;
+		for (int i = 0; i < Token.OPERATORS.length; ++i) {
+			spellings[i] = Token.OPERATORS[i].name();
+			kinds[i] = Token.OPERATORS[i].kind();
+		}
+		spellings[spellings.length - 1] = COMMENT;
+		kinds[spellings.length - 1] = SKIP_LINE;
+		int classes = OTHER + 1;
+		for (String spelling : spellings) {
+			for (char character : spelling.toCharArray()) {
+				if (CLASS_OF[character] == OTHER) {
+					CLASS_OF[character] = (byte) classes++;
+				}
+			}
+			length += spelling.length();
+		}
+		CLASSES = classes;
+		int[] transitions = new int[(IN_LITERAL + 1 + length) * CLASSES];
+		int[] accepts = new int[IN_LITERAL + 1 + length];
+		Arrays.fill(transitions, STOP);
+		Arrays.fill(accepts, NO_TOKEN);
+		transitions[START * CLASSES + BLANK] = START;
+		transitions[START * CLASSES + LETTER] = IN_IDENTIFIER;
+		transitions[IN_IDENTIFIER * CLASSES + LETTER] = IN_IDENTIFIER;
+		transitions[IN_IDENTIFIER * CLASSES + DIGIT] = IN_IDENTIFIER;
+		transitions[IN_IDENTIFIER * CLASSES + CONTINUES] = IN_IDENTIFIER;
+		transitions[START * CLASSES + DIGIT] = IN_LITERAL;
+		transitions[IN_LITERAL * CLASSES + DIGIT] = IN_LITERAL;
+		accepts[IN_IDENTIFIER] = Kind.IDENTIFIER;
+		accepts[IN_LITERAL] = Kind.LITERAL;
+		int states = IN_LITERAL + 1;
+		for (int i = 0; i < spellings.length; ++i) { // A trie of the spellings
+			int state = START;
+			for (char character : spellings[i].toCharArray()) {
+				int at = state * CLASSES + CLASS_OF[character];
+				if (transitions[at] == STOP) {
+					transitions[at] = states++;
+				}
+				state = transitions[at];
+			}
+			accepts[state] = kinds[i];
+		}
+		TRANSITIONS = new short[states * CLASSES];
+		for (int at = 0; at < TRANSITIONS.length; ++at) {
+			TRANSITIONS[at] = (short) (transitions[at] == STOP ? STOP : transitions[at] * CLASSES);
+		}
+		ACCEPTS = Arrays.copyOf(accepts, states);
+	}
+
+	private static void classify(final String characters, final int characterClass) {
+		for (char character : characters.toCharArray()) {
+			CLASS_OF[character] = (byte) characterClass;
+		}
+	}
+}
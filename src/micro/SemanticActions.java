@@ -0,0 +1,243 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// ------------------------------ SemanticActions Class ------------------
+class SemanticActions {
+	public SemanticActions(final PrintWriter out, final CodeGenerator codegen,
+			SymbolTable idtable) {
+		this(out, codegen, idtable, new Diagnostics());
+	}
+
+	public SemanticActions(final PrintWriter out, final CodeGenerator codegen,
+			SymbolTable idtable, final Diagnostics diagnostics) {
+		this.out = out;
+		this.diagnostics = diagnostics;
+		this.codegenerator = codegen;
+		this.symbolTable = idtable;
+	}
+
+	void semanticError(final String message) {
+		out.println("SemanticActions Error: " + message);
+		diagnostics.report(Diagnostic.SEMANTIC, "SemanticActions Error: " + message);
+		errors++;
+		throw new CompileError("SemanticActions Error: " + message);
+	}
+
+	public void start() {
+		out.println("    %  Compiled on " + new Date());
+		out.println("    %  Author(s): Joseph Bergin, Drew Cimino");
+	}
+
+	public void finish() {
+		codegenerator.generate0Address("HALT");
+		codegenerator.generateVariables();
+	}
+
+	public Expression processIdentifier(final char[] spelling, final int start, final int length) {
+		int symbol = symbolTable.checkIdentifier(spelling, start, length);
+		return symbolTable.variable(symbol);
+	}
+
+	// Expressions become trees; CodeGenerator lowers them where a statement uses them.
+	public Expression addExpression(final Expression left, final AddOperator addOp, final Expression right) {
+		return new BinaryExpression(left, addOp.samCode(), right, codegenerator.mark());
+	}
+	
+	public Expression multiplyExpression(final Expression left, final MultiplyOperator multiplyOp, final Expression right) {
+		return new BinaryExpression(left, multiplyOp.samCode(), right, codegenerator.mark());
+	}
+	
+	public void relativeExpression(final Expression left, final Expression right){
+		Expression leftValue = codegenerator.lower(left);
+		Expression rightValue = codegenerator.lower(right);
+		TemporaryExpression register = codegenerator.loadRegister(leftValue);
+		codegenerator.generate2Address("IC", register, rightValue);
+		codegenerator.freeTemporary(rightValue);
+		codegenerator.freeTemporary(register);
+	}
+	
+	public IfRecord startIf(){
+		
+		String endOfIf_Label = codegenerator.generateLabel();
+		String endOfElse_Label = codegenerator.generateLabel();
+		
+		return new IfRecord(endOfIf_Label, endOfElse_Label);
+	}
+
+	public void ifTest(IfRecord record, Guard guard){
+		if (record.dispatched()) { // The arm's label; its guard is tested in endIfElse.
+			String arm = codegenerator.generateLabel();
+			codegenerator.generateJump("LABEL", arm);
+			record.addArm(guard, arm, codegenerator.armPoint(), codegenerator.mark());
+			return;
+		}
+		if (!record.endOfIfListed() && caseVariable(guard) != null) { // The first guard could start a search.
+			int position = codegenerator.dispatchPoint();
+			record.addArm(guard, codegenerator.generateLabel(), position, codegenerator.mark());
+			return;
+		}
+		if (record.endOfIfListed()) { // Not the first guard
+			record.nextGuard(codegenerator.generateLabel());
+		}
+		relativeExpression(guard.left(), guard.right());
+		codegenerator.generateJump(guard.relation().samCode(), record.endOfIf()); // Skips the then part when the guard fails.
+	}
+	
+	public void endIfBeginElse(IfRecord record){
+		codegenerator.generateJump("JMP", record.endOfElse());
+		if (!record.dispatched()) {
+			codegenerator.generateJump("LABEL", record.endOfIf());
+			record.listEndOfIf();
+		}
+	}
+
+	public void startElse(IfRecord record){
+		if (record.dispatched()) {
+			record.startOtherwise(codegenerator.generateLabel());
+			codegenerator.generateJump("LABEL", record.otherwise());
+		}
+	}
+	
+	// The dispatch: a search over the guards' literals, or each guard tested
+	// where its arm starts, jumping to the next arm's label when it fails.
+	public void endIfElse(IfRecord record){
+		if (record.dispatched()) {
+			String otherwise = record.otherwise() != null ? record.otherwise() : record.endOfElse();
+			if (!searchGuards(record, otherwise)) {
+				int arms = record.guards().size();
+				for (int arm = arms - 1; arm >= 0; --arm) { // From the last, so the positions before it stay put.
+					Guard guard = record.guards().get(arm);
+					codegenerator.startDispatch();
+					relativeExpression(guard.left(), guard.right());
+					String next = arm + 1 < arms ? record.arms().get(arm + 1) : otherwise;
+					codegenerator.generateJump(guard.relation().samCode(), next); // Skips the arm when the guard fails.
+					codegenerator.endDispatch(record.position(arm), record.anchor(arm));
+				}
+			}
+			codegenerator.endDispatches();
+		} else if (!record.endOfIfListed()) { // The last guard had no else part after it.
+			codegenerator.generateJump("LABEL", record.endOfIf());
+		}
+		codegenerator.generateJump("LABEL", record.endOfElse());
+	}
+
+	public DoRecord startDo() {
+		DoRecord record = new DoRecord(codegenerator.generateLabel());
+		codegenerator.generateJump("LABEL", record.top());
+		return record;
+	}
+
+	public void doTest(final DoRecord record, final Guard guard) {
+		record.nextArm(codegenerator.generateLabel());
+		relativeExpression(guard.left(), guard.right());
+		codegenerator.generateJump(guard.relation().samCode(), record.endOfArm()); // Skips the arm when the guard fails.
+	}
+
+	public void endDoArm(final DoRecord record) {
+		codegenerator.generateJump("JMP", record.top());
+		codegenerator.generateJump("LABEL", record.endOfArm());
+	}
+
+	// Guards all of the form v = literal for one variable v choose their arm by a
+	// binary search over the literals: one compare per level. (SAM has no indexed
+	// jump for a table.) The search goes in where the first guard would be tested,
+	// with the first arm's label after it. Returns false, generating nothing, for
+	// other guards.
+	private boolean searchGuards(final IfRecord record, final String otherwise) {
+		IdExpression variable = null;
+		TreeMap<Integer, String> cases = new TreeMap<Integer, String>();
+		for (int arm = 0; arm < record.guards().size(); ++arm) {
+			Guard guard = record.guards().get(arm);
+			IdExpression left = caseVariable(guard);
+			if (left == null || variable != null && variable.symbol() != left.symbol()) {
+				return false;
+			}
+			variable = left;
+			int literal = ((LiteralExpression) (guard.left() == left ? guard.right() : guard.left())).word();
+			if (!cases.containsKey(literal)) { // First guard holding wins.
+				cases.put(literal, record.arms().get(arm));
+			}
+		}
+		if (cases.size() < SEARCH_MINIMUM) {
+			return false;
+		}
+		codegenerator.startDispatch();
+		TemporaryExpression register = codegenerator.loadRegister(variable);
+		search(register, new ArrayList<Integer>(cases.keySet()), cases, 0, cases.size() - 1, otherwise);
+		codegenerator.freeTemporary(register);
+		codegenerator.generateJump("LABEL", record.arms().get(0));
+		codegenerator.endDispatch(record.position(0), record.anchor(0));
+		return true;
+	}
+
+	private static IdExpression caseVariable(final Guard guard) { // The v of v = literal or literal = v, else null
+		if (guard.relation() != RelativeOperator.EQUAL) {
+			return null;
+		}
+		if (guard.left() instanceof IdExpression && guard.right() instanceof LiteralExpression) {
+			return (IdExpression) guard.left();
+		}
+		if (guard.right() instanceof IdExpression && guard.left() instanceof LiteralExpression) {
+			return (IdExpression) guard.right();
+		}
+		return null;
+	}
+
+	private void search(final TemporaryExpression register, final List<Integer> values, final Map<Integer, String> cases,
+			final int low, final int high, final String otherwise) {
+		int middle = (low + high) >>> 1;
+		codegenerator.generate2Address("IC", register, new LiteralExpression(values.get(middle)));
+		codegenerator.generateJump("JEQ", cases.get(values.get(middle)));
+		if (low == high) {
+			codegenerator.generateJump("JMP", otherwise);
+			return;
+		}
+		String below = low < middle ? codegenerator.generateLabel() : otherwise;
+		codegenerator.generateJump("JLT", below);
+		search(register, values, cases, middle + 1, high, otherwise);
+		if (low < middle) {
+			codegenerator.generateJump("LABEL", below);
+			search(register, values, cases, low, middle - 1, otherwise);
+		}
+	}
+
+	public void assign(final Expression target, final Expression source) {
+		Expression value = codegenerator.lower(source);
+		TemporaryExpression register = codegenerator.loadRegister(value);
+		codegenerator.generate2Address("STO", register, target);
+		codegenerator.freeTemporary(register);
+		codegenerator.freeTemporary(value);
+		codegenerator.freeTemporary(target);
+	}
+
+	public void writeExpression(final Expression outExpression) {
+		Expression value = codegenerator.lower(outExpression);
+		codegenerator.generate1Address("WRI", value);
+		codegenerator.freeTemporary(value);
+	}
+
+	public void endWrite() {
+		codegenerator.generate0Address("WRNL");
+	}
+
+	public void readVariable(final Expression inVariable) {
+		codegenerator.generate1Address("RDI", inVariable);
+	}
+
+	public int errors() {
+		return errors;
+	}
+
+	private final PrintWriter out;
+	private final Diagnostics diagnostics;
+	private final CodeGenerator codegenerator;
+	private final SymbolTable symbolTable;
+	private static final int SEARCH_MINIMUM = 3; // Fewer cases are tested one by one.
+	private int errors = 0;
+}
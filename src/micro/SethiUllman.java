@@ -0,0 +1,26 @@
+package micro;
+
+// ------------------------------ SethiUllman ----------------------------
+// Orders each operator's operands so its tree is computed in the fewest
+// registers (Sethi and Ullman, 1970). The operand needing more registers goes
+// first: for + and * by swapping the operands, which also lets a single operand
+// on the left be used straight from memory; for - and / by computing the right
+// operand first. BinaryExpression.registers() is the need of the chosen order.
+class SethiUllman extends BottomUpPass {
+	Expression rebuild(final BinaryExpression tree, final Expression left, final Expression right) {
+		if (right instanceof BinaryExpression) {
+			int leftNeed = left instanceof BinaryExpression ? ((BinaryExpression) left).registers() : 1;
+			int rightNeed = ((BinaryExpression) right).registers();
+			if (tree.commutative() && (!(left instanceof BinaryExpression) || rightNeed > leftNeed)) {
+				return new BinaryExpression(right, tree.opcode(), left, tree.mark());
+			}
+			if (rightNeed > leftNeed) {
+				return new BinaryExpression(left, tree.opcode(), right, tree.mark(), true);
+			}
+		}
+		if (left == tree.left() && right == tree.right()) {
+			return tree;
+		}
+		return new BinaryExpression(left, tree.opcode(), right, tree.mark());
+	}
+}
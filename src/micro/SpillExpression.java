@@ -0,0 +1,18 @@
+package micro;
+
+// ------------------------------ SpillExpression ----------------------------
+class SpillExpression implements Expression { // A memory cell the compiler keeps a register's value in: Immutable
+	public SpillExpression(final int which) {
+		this.which = which;
+	}
+
+	public String samCode() {
+		return "$" + which + "spill$"; // Identifiers start with a letter, so this is no variable's cell.
+	}
+
+	public int which() {
+		return which;
+	}
+
+	private final int which;
+}
@@ -0,0 +1,106 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+// ------------------------------ SymbolTable ----------------------------
+class SymbolTable { // Open addressing over spellings; symbols are numbered densely in order of entry.
+	public SymbolTable(PrintWriter messages) {
+		out = messages;
+	}
+
+	// The symbol spelled by spelling[start, start + length), or -1 if it has not been entered.
+	public int lookUp(final char[] spelling, final int start, final int length) {
+		int slot = hash(spelling, start, length) & (slots.length - 1);
+		while (slots[slot] != 0) {
+			int symbol = slots[slot] - 1;
+			if (spells(symbol, spelling, start, length)) {
+				return symbol;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		return -1;
+	}
+
+	private int enter(final char[] spelling, final int start, final int length) {
+		if ((size + 1) * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			variables = Arrays.copyOf(variables, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int symbol = size++;
+		names[symbol] = new String(spelling, start, length);
+		variables[symbol] = new IdExpression(symbol, "$" + names[symbol] + "$");
+		hashes[symbol] = hash(spelling, start, length);
+		insert(symbol);
+		return symbol;
+	}
+
+	public int checkIdentifier(final char[] spelling, final int start, final int length) {
+		int where = lookUp(spelling, start, length);
+		if (where < 0) {
+			where = enter(spelling, start, length);
+			out.println("    %    Implicit declaration of: " + names[where]);
+		}
+		return where;
+	}
+
+	public String name(final int symbol) {
+		return names[symbol];
+	}
+
+	public IdExpression variable(final int symbol) { // Shared: IdExpressions are immutable.
+		return variables[symbol];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private boolean spells(final int symbol, final char[] spelling, final int start, final int length) {
+		String name = names[symbol];
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (name.charAt(i) != spelling[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(final char[] spelling, final int start, final int length) {
+		int hash = 0;
+		for (int i = start; i < start + length; ++i) {
+			hash = 31 * hash + spelling[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private void insert(final int symbol) {
+		int slot = hashes[symbol] & (slots.length - 1);
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		slots[slot] = symbol + 1;
+	}
+
+	private void rehash(final int capacity) {
+		slots = new int[capacity];
+		for (int symbol = 0; symbol < size; ++symbol) {
+			insert(symbol);
+		}
+	}
+
+	private int[] slots = new int[INITIAL_CAPACITY * 2]; // symbol + 1, 0 when free
+	private String[] names = new String[INITIAL_CAPACITY];
+	private IdExpression[] variables = new IdExpression[INITIAL_CAPACITY];
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int size = 0;
+	private final PrintWriter out;
+	private static final int INITIAL_CAPACITY = 64;
+}
@@ -0,0 +1,18 @@
+package micro;
+
+// ------------------------------ TemporaryExpression ----------------------------
+class TemporaryExpression implements Expression { // Represents a cpu register: Immutable
+	public TemporaryExpression(final int which) {
+		this.which = which;
+	}
+
+	public String samCode() {
+		return "R" + which;
+	}
+
+	public int which() {
+		return which;
+	}
+
+	private final int which; // The register number
+}
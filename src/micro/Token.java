@@ -0,0 +1,110 @@
+package micro;
+
+import java.util.Arrays;
+
+// ------------------------------ Token ----------------------------
+class Token {
+	private static final Token[] BY_KIND = new Token[Kind.COUNT]; // Filled in as the tokens below are made.
+
+	public static final Token IDENTIFIER 			= new Token("identifier", Kind.IDENTIFIER);
+	public static final Token INTEGER_LITERAL 		= new Token("integer literal", Kind.LITERAL);
+	public static final Token ASSIGN_OPERATOR 		= new Token(":=", Kind.ASSIGN);
+	public static final Token PLUS_OPERATOR 		= new Token("+", Kind.PLUS);
+	public static final Token MINUS_OPERATOR 		= new Token("-", Kind.MINUS);
+	public static final Token COMMA 				= new Token(",", Kind.COMMA);
+	public static final Token SEMICOLON 			= new Token(";", Kind.SEMICOLON);
+	public static final Token RIGHT_PARENTHESIS		= new Token(")", Kind.RIGHT_PARENTHESIS);
+	public static final Token LEFT_PARENTHESIS 		= new Token("(", Kind.LEFT_PARENTHESIS);
+	public static final Token PERIOD 				= new Token(".", Kind.PERIOD);
+	public static final Token GREATERTHAN_SYMBOL	= new Token(">", Kind.GREATER);
+	public static final Token LESSTHAN_SYMBOL		= new Token("<", Kind.LESS);
+	public static final Token GREATEROREQUAL_SYMBOL	= new Token(">=", Kind.GREATER_OR_EQUAL);
+	public static final Token LESSOREQUAL_SYMBOL	= new Token("<=", Kind.LESS_OR_EQUAL);
+	public static final Token EQUAL_SYMBOL			= new Token("=", Kind.EQUAL);
+	public static final Token INEQUAL_SYMBOL		= new Token("#", Kind.INEQUAL);
+	public static final Token BEGIN_SYMBOL 			= new Token("begin", Kind.BEGIN);
+	public static final Token END_SYMBOL 			= new Token("end", Kind.END);
+	public static final Token READ_SYMBOL 			= new Token("read", Kind.READ);
+	public static final Token WRITE_SYMBOL 			= new Token("write", Kind.WRITE);
+	public static final Token EOF_SYMBOL 			= new Token("eof", Kind.EOF);
+	public static final Token MULTIPLY_OPERATOR		= new Token("*", Kind.TIMES);
+	public static final Token DIVIDE_OPERATOR		= new Token("/", Kind.DIVIDE);
+	public static final Token SKIP_SYMBOL			= new Token("skip", Kind.SKIP);
+	public static final Token IF_SYMBOL				= new Token("if", Kind.IF);
+	public static final Token THEN_SYMBOL			= new Token("->", Kind.THEN);
+	public static final Token ELSE_SYMBOL			= new Token("[]", Kind.ELSE);
+	public static final Token ENDIF_SYMBOL			= new Token("fi", Kind.FI);
+	public static final Token DO_SYMBOL				= new Token("do", Kind.DO);
+	public static final Token ENDDO_SYMBOL			= new Token("od", Kind.OD);
+	// Add new tokens here please, each with a new code in Kind
+
+	// The operators, spelled by their names, from which Scanner's transition table
+	// is made. New operators only need to be listed here.
+	static final Token[] OPERATORS = { ASSIGN_OPERATOR, PLUS_OPERATOR, MINUS_OPERATOR, COMMA, SEMICOLON,
+			RIGHT_PARENTHESIS, LEFT_PARENTHESIS, PERIOD, GREATERTHAN_SYMBOL, LESSTHAN_SYMBOL, GREATEROREQUAL_SYMBOL,
+			LESSOREQUAL_SYMBOL, EQUAL_SYMBOL, INEQUAL_SYMBOL, MULTIPLY_OPERATOR, DIVIDE_OPERATOR, THEN_SYMBOL, ELSE_SYMBOL };
+
+	// The reserved words, spelled by their names. New keywords only need to be listed here.
+	private static final Token[] RESERVED = { BEGIN_SYMBOL, END_SYMBOL, READ_SYMBOL, WRITE_SYMBOL,
+			SKIP_SYMBOL, IF_SYMBOL, ENDIF_SYMBOL, DO_SYMBOL, ENDDO_SYMBOL };
+
+	// Reserved words bucketed by length and first letter; a bucket rarely holds more than one.
+	private static final Token[][] KEYWORDS;
+	private static final int LETTERS = 26;
+	static {
+		int longest = 0;
+		for (Token word : RESERVED) {
+			longest = Math.max(longest, word.name.length());
+		}
+		KEYWORDS = new Token[(longest + 1) * LETTERS][];
+		for (Token word : RESERVED) {
+			int slot = word.name.length() * LETTERS + word.name.charAt(0) - 'a';
+			Token[] bucket = KEYWORDS[slot] == null ? new Token[1] : Arrays.copyOf(KEYWORDS[slot], KEYWORDS[slot].length + 1);
+			bucket[bucket.length - 1] = word;
+			KEYWORDS[slot] = bucket;
+		}
+	}
+
+	// The Kind of the identifier spelled by spelling[start, start + length), ignoring case.
+	static int reserved(final char[] spelling, final int start, final int length) {
+		int letter = (spelling[start] | 0x20) - 'a'; // Identifiers start with a letter.
+		int slot = length * LETTERS + letter;
+		if (slot >= KEYWORDS.length || KEYWORDS[slot] == null) {
+			return Kind.IDENTIFIER;
+		}
+		for (Token word : KEYWORDS[slot]) {
+			char[] name = word.letters;
+			int i = 1;
+			while (i < length && (spelling[start + i] | 0x20) == name[i]) { // Digits and '_' never fold onto letters.
+				i++;
+			}
+			if (i == length) {
+				return word.kind;
+			}
+		}
+		return Kind.IDENTIFIER;
+	}
+
+	static Token of(final int kind) {
+		return BY_KIND[kind];
+	}
+
+	public String name() {
+		return name;
+	}// Only used in error reporting.
+
+	public int kind() {
+		return kind;
+	}
+
+	private final String name;
+	private final char[] letters;
+	private final int kind;
+
+	private Token(final String name, final int kind) {
+		this.name = name;
+		this.letters = name.toCharArray();
+		this.kind = kind;
+		BY_KIND[kind] = this;
+	}
+}
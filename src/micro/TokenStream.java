@@ -0,0 +1,273 @@
+package micro;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// ------------------------------ TokenStream ----------------------------
+// The tokens of the source for the parser, a block of whole lines at a time.
+// A block holds its tokens as parallel arrays: each token's Kind code, where
+// its spelling starts in the block's text, how long it is, and its line. The
+// parser may look ahead of the current token and read any spelling in place.
+// Scanning lists no lines and reports no errors itself; that is replayed as
+// the parser reaches each token (looking ahead lists nothing), so the listing
+// is exactly that of scanning one token at a time.
+class TokenStream {
+	public TokenStream(final Reader in, final PrintWriter out) {
+		this(in, out, new Diagnostics(), new char[WINDOW_SIZE], 1);
+	}
+
+	// lexers > 1 scans blocks ahead of the parser, that many chunks at once; see ParallelLexer.
+	public TokenStream(final Reader in, final PrintWriter out, final Diagnostics diagnostics, final char[] window,
+			final int lexers) {
+		this(new ParallelLexer(in, lexers, window), out, diagnostics);
+	}
+
+	TokenStream(final ParallelLexer lexer, final PrintWriter out, final Diagnostics diagnostics) {
+		this.lexer = lexer;
+		this.out = out;
+		this.diagnostics = diagnostics;
+	}
+
+	public int kind() { // of the current token
+		if (position >= listed) {
+			reach();
+		}
+		return kinds[position];
+	}
+
+	// The kind of the token ahead places after the current one, EOF past the end.
+	// Nothing is listed for it until the parser gets there.
+	public int kind(final int ahead) {
+		kind();
+		Block at = block;
+		int index = position + ahead;
+		while (index >= at.count && !at.last) {
+			index -= at.count;
+			if (at.next == null) {
+				at.next = take();
+			}
+			at = at.next;
+		}
+		return at.kinds[Math.min(index, at.count - 1)];
+	}
+
+	public void advance() {
+		position++;
+	}
+
+	public void match(final int kind) {
+		if (kind != kind()) {
+			error(kind);
+		}
+		position++;
+	}
+
+	// The spelling of the current token, as a slice of text(). It stays there
+	// until the parser has moved a block on.
+	public char[] text() {
+		return block.text;
+	}
+
+	public int start() {
+		return block.starts[position];
+	}
+
+	public int length() {
+		return block.lengths[position];
+	}
+
+	public String spelling() {
+		return new String(block.text, start(), length());
+	}
+
+	public int line() { // of the current token, from 1
+		return firstLine + block.lines[position];
+	}
+
+	public int literalValue() { // The value of the current LITERAL.
+		int start = start();
+		int length = length();
+		if (length > 9) {
+			return Integer.parseInt(spelling()); // May overflow: let parseInt decide.
+		}
+		char[] text = block.text;
+		int value = 0;
+		for (int i = start; i < start + length; ++i) {
+			value = value * 10 + (text[i] - '0');
+		}
+		return value;
+	}
+
+	public int errors() { // Lexical errors replayed so far, and match errors
+		return errors;
+	}
+
+	public void close() {
+		lexer.close();
+	}
+
+	// The tokens of a run of whole lines, in parallel arrays; the lines; and the
+	// lexical errors, each with the token whose scanning met it (count for those
+	// met after the last token) and the lines scanned by then.
+	static final class Block {
+		Block(final char[] text, final int capacity) {
+			this.text = text;
+			kinds = new int[capacity];
+			starts = new int[capacity];
+			lengths = new int[capacity];
+			lines = new int[capacity];
+		}
+
+		void add(final int kind, final int start, final int length) {
+			if (count == kinds.length) {
+				int capacity = count * 2 + 1;
+				kinds = Arrays.copyOf(kinds, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+			}
+			kinds[count] = kind;
+			starts[count] = start;
+			lengths[count] = length;
+			lines[count] = lineCount;
+			count++;
+		}
+
+		void line(final int start, final int end) { // Scanned text[start, end) as the next line
+			if (2 * lineCount == lineBounds.length) {
+				lineBounds = Arrays.copyOf(lineBounds, 4 * lineCount + 2);
+			}
+			lineBounds[2 * lineCount] = start;
+			lineBounds[2 * lineCount + 1] = end;
+			lineCount++;
+		}
+
+		void error(final String message) {
+			if (reports.size() == reportTokens.length) {
+				reportTokens = Arrays.copyOf(reportTokens, 2 * reports.size() + 1);
+			}
+			reportTokens[reports.size()] = count;
+			reports.add(new Diagnostic(Diagnostic.LEXICAL, lineCount, message));
+		}
+
+		void reuse(final char[] text) { // Empties the block, to scan text into.
+			this.text = text;
+			count = lineCount = 0;
+			reports.clear();
+			last = false;
+			next = null;
+			listed = listedLines = reported = 0;
+		}
+
+		char[] text;
+		int[] kinds;
+		int[] starts;
+		int[] lengths;
+		int[] lines; // Lines of the block scanned once each token was, so its line in the block
+		int count = 0;
+		int lineCount = 0;
+		int[] lineBounds = new int[0]; // Start and end of each line, as listed
+		final List<Diagnostic> reports = new ArrayList<Diagnostic>();
+		int[] reportTokens = new int[0];
+		boolean last = false; // Whether the source ends with this block, with an EOF token
+		Block next = null; // The block after this one, once the parser has looked into it
+		int listed = 0; // Tokens the listing has gone past, or needs nothing for,
+		int listedLines = 0; // and the lines
+		int reported = 0; // and errors replayed.
+	}
+
+	// Moves into the block position is in, and lists through the token there.
+	private void reach() {
+		if (block == null) {
+			block = take();
+			kinds = block.kinds;
+		}
+		while (position >= block.count) {
+			if (block.last) {
+				position = block.count - 1; // Stay on EOF.
+				break;
+			}
+			list(block, block.count);
+			firstLine += block.lineCount;
+			position -= block.count;
+			Block next = block.next;
+			block.next = null;
+			spare = block;
+			block = next != null ? next : take();
+			kinds = block.kinds;
+		}
+		list(block, position);
+		listed = block.listed;
+	}
+
+	private Block take() {
+		Block reuse = spare;
+		spare = null;
+		return lexer.take(reuse);
+	}
+
+	// Lists the lines and errors of a block up to its token through, or all of them if that is count.
+	private void list(final Block tokens, final int through) {
+		if (through < tokens.listed) {
+			return;
+		}
+		int lines = through < tokens.count ? tokens.lines[through] : tokens.lineCount;
+		while (true) {
+			if (tokens.reported < tokens.reports.size() && tokens.reportTokens[tokens.reported] <= through
+					&& tokens.reports.get(tokens.reported).line() == tokens.listedLines) {
+				Diagnostic report = tokens.reports.get(tokens.reported++);
+				out.println(report.message());
+				diagnostics.report(report.kind(), report.message());
+				errors++;
+			} else if (tokens.listedLines < lines) {
+				listLine(tokens.text, tokens.lineBounds[2 * tokens.listedLines], tokens.lineBounds[2 * tokens.listedLines + 1]);
+				tokens.listedLines++;
+			} else {
+				break;
+			}
+		}
+		if (tokens.last && through == tokens.count - 1) {
+			listLine(END_LINE, 0, END_LINE.length);
+		}
+		// The tokens after it on the same line list nothing: skip them.
+		int next = through + 1;
+		int limit = tokens.last ? tokens.count - 1 : tokens.count;
+		int report = tokens.reported < tokens.reports.size() ? tokens.reportTokens[tokens.reported] : limit;
+		while (next < limit && next < report && tokens.lines[next] == tokens.listedLines) {
+			next++;
+		}
+		tokens.listed = next;
+	}
+
+	// Echoes a source line to the listing and counts it.
+	private void listLine(final char[] text, final int start, final int end) {
+		out.print("    %");
+		out.write(text, start, end - start);
+		out.println(Scanner.blank);
+		diagnostics.newLine();
+	}
+
+	private void error(final int kind) {
+		String message = "Match Error Detected Expecting: " + Token.of(kind).name() + " saw: " + Token.of(kind()).name();
+		out.println(message);
+		diagnostics.report(Diagnostic.MATCH, message);
+		errors++;
+		throw new CompileError(message);
+	}
+
+	private final ParallelLexer lexer;
+	private final PrintWriter out;
+	private final Diagnostics diagnostics;
+	private Block block = null; // The block the current token is in,
+	private int[] kinds = null; // its kinds,
+	private int position = 0; // the current token's index there,
+	private int listed = 0; // and the tokens before this the listing has gone past.
+	private Block spare = null; // A block the parser is done with, for the lexer to reuse
+	private int firstLine = 0; // Lines before the block
+	private int errors = 0;
+	static final int WINDOW_SIZE = 1 << 16;
+	private static final char[] END_LINE = { Scanner.blank }; // What is listed for the end of the source
+}
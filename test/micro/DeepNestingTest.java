@@ -0,0 +1,53 @@
+package micro;
+
+import org.junit.jupiter.api.Test;
+
+// ------------------------------ DeepNestingTest ----------------------------
+// Expressions nested far deeper than a thread's stack would allow one call per
+// level: parentheses nesting to the right, operator chains to the left, alone
+// and inside a loop that hoists them.
+class DeepNestingTest {
+	@Test
+	void rightNestedExpression() { // a - (a - (... - a)) with an odd number of a's is a
+		Execution.check("right nesting", program("WRITE " + rightNesting() + ";"), "5 3", "5 \n");
+	}
+
+	@Test
+	void leftChain() {
+		Execution.check("left chain", program("WRITE " + chain() + ";"), "5 3", (short) (5 - DEPTH * 3) + " \n");
+	}
+
+	@Test
+	void nestedInvariantsInLoop() {
+		String loop = "i := 0;\n  DO i < 2 ->\n    x := " + rightNesting() + ";\n    y := " + chain() + ";\n"
+			+ "    WRITE x, y, i;\n    i := i + 1;\n  OD;";
+		String line = "5 " + (short) (5 - DEPTH * 3) + " ";
+		Execution.check("nesting in a loop", program(loop), "5 3", line + "0 \n" + line + "1 \n");
+	}
+
+	private static String program(final String statements) {
+		return "BEGIN\n  READ a, b;\n  " + statements + "\nEND.\n";
+	}
+
+	private static String rightNesting() {
+		StringBuilder expression = new StringBuilder();
+		for (int i = 0; i < DEPTH; ++i) {
+			expression.append("a - (");
+		}
+		expression.append('a');
+		for (int i = 0; i < DEPTH; ++i) {
+			expression.append(')');
+		}
+		return expression.toString();
+	}
+
+	private static String chain() {
+		StringBuilder expression = new StringBuilder("a");
+		for (int i = 0; i < DEPTH; ++i) {
+			expression.append(" - b");
+		}
+		return expression.toString();
+	}
+
+	private static final int DEPTH = 10000;
+}
@@ -0,0 +1,18 @@
+package micro;
+
+import org.junit.jupiter.api.Test;
+
+// ------------------------------ DifferentialTest ----------------------------
+// Random programs, each checked against the output ProgramGenerator's model of
+// it prints. A failure names the seed; new ProgramGenerator(seed) rebuilds it.
+class DifferentialTest {
+	@Test
+	void generatedProgramsPrintWhatTheModelPrints() {
+		for (long seed = 1; seed <= PROGRAMS; ++seed) {
+			ProgramGenerator program = new ProgramGenerator(seed);
+			Execution.check("seed " + seed, program.source(), program.input(), program.output());
+		}
+	}
+
+	private static final int PROGRAMS = 400;
+}
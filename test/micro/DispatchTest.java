@@ -0,0 +1,33 @@
+package micro;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// ------------------------------ DispatchTest ----------------------------
+// An IF whose guards all test one variable against literals chooses its arm by
+// a search that takes in the first guard as well as the later ones, plain and
+// with -O; one that cannot be searched still tests each guard in turn.
+class DispatchTest {
+	@Test
+	void everyGuardSearched() {
+		String source = program("IF v = 3 -> WRITE 30; [] v = 1 -> WRITE 10; [] v = 2 -> WRITE 20; [] SKIP; FI;");
+		Execution.check("search", source, "1 2 3 4", "10 \n20 \n30 \n");
+		for (Compiler compiler : new Compiler[] {new Compiler(), Compiler.optimizing()}) {
+			String code = String.join("\n", compiler.compile(source).instructions());
+			assertFalse(code.contains("JNE"), code);
+			assertTrue(code.contains("#3"), code);
+		}
+	}
+
+	@Test
+	void guardsTestedInTurn() {
+		String source = program("IF v = 3 -> WRITE 30; [] v < 2 -> WRITE 10; [] v = 2 -> WRITE 20; FI;");
+		Execution.check("in turn", source, "1 2 3 4", "10 \n20 \n30 \n");
+	}
+
+	private static String program(final String statement) {
+		return "BEGIN\n  i := 0;\n  DO i < 4 ->\n    READ v;\n    " + statement + "\n    i := i + 1;\n  OD;\nEND.\n";
+	}
+}
@@ -0,0 +1,54 @@
+package micro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+// ------------------------------ Execution ----------------------------
+// Compiles a program plain and with -O, then runs each result three ways: the
+// interpreter on the code, the interpreter on the listing as a codefile holds
+// it, and the code translated to JVM bytecode (-jvm). All six runs must print
+// the expected output.
+final class Execution {
+	private Execution() {
+	}
+
+	static void check(final String what, final String source, final String input, final String expected) {
+		check(what, "plain", new Compiler(), source, input, expected);
+		check(what, "-O", Compiler.optimizing(), source, input, expected);
+	}
+
+	private static void check(final String what, final String mode, final Compiler compiler, final String source,
+			final String input, final String expected) {
+		CompilationResult result = compiler.compile(source);
+		assertTrue(result.succeeded(), what + " " + mode + ": " + result.diagnostics() + "\n" + source);
+		String context = what + " " + mode + "\n" + source;
+		assertEquals(expected, interpret(new SamMachine(result.instructions()), input), context);
+		try {
+			assertEquals(expected, interpret(SamMachine.load(new StringReader(result.listing())), input), context);
+		} catch (IOException e) {
+			throw new AssertionError(context, e);
+		}
+		assertEquals(expected, translate(new SamMachine(result.instructions()), input), context + "-jvm");
+	}
+
+	private static String interpret(final SamMachine machine, final String input) {
+		StringWriter output = new StringWriter();
+		machine.run(SamMachine.integers(new StringReader(input)), new PrintWriter(output));
+		return lines(output);
+	}
+
+	private static String translate(final SamMachine machine, final String input) {
+		StringWriter output = new StringWriter();
+		machine.translate().run(SamMachine.integers(new StringReader(input)), new PrintWriter(output));
+		return lines(output);
+	}
+
+	private static String lines(final StringWriter output) { // WRNL writes the platform line separator
+		return output.toString().replace(System.lineSeparator(), "\n");
+	}
+}
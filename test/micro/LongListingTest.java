@@ -0,0 +1,59 @@
+package micro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// ------------------------------ LongListingTest ----------------------------
+// A program whose listing text outgrows what -O keeps of it in memory: the
+// listing still echoes all of the source, each statement just before its code.
+class LongListingTest {
+	@Test
+	void listingTextKeptInAFile() {
+		StringBuilder source = new StringBuilder("BEGIN\n  READ a;\n");
+		for (int i = 1; i <= STATEMENTS; ++i) {
+			source.append("  -- ").append(NOTE).append('\n');
+			source.append("  a := a + ").append(i).append(";\n");
+		}
+		source.append("  WRITE a;\nEND.\n");
+		String program = source.toString();
+		Execution.check("long listing", program, "5", (short) (5 + STATEMENTS * (STATEMENTS + 1) / 2) + " \n");
+
+		List<String> plain = lines(new Compiler().compile(program).listing());
+		List<String> optimized = lines(Compiler.optimizing().compile(program).listing());
+		assertEquals(echo(plain), echo(optimized));
+		for (int i = 0; i < optimized.size(); ++i) {
+			String line = optimized.get(i);
+			if (line.startsWith("    %  a := a + ")) {
+				String constant = "#" + line.substring("    %  a := a + ".length(), line.indexOf(';'));
+				assertTrue(optimized.get(i + 1).contains(constant) || optimized.get(i + 2).contains(constant),
+					line + " is not followed by its code");
+			}
+		}
+	}
+
+	private static List<String> lines(final String listing) {
+		List<String> lines = new ArrayList<String>();
+		for (String line : listing.split("\n")) {
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	private static List<String> echo(final List<String> listing) { // The source lines, without the date
+		List<String> echo = new ArrayList<String>();
+		for (String line : listing) {
+			if (line.startsWith("    %") && !line.startsWith("    %  Compiled on")) {
+				echo.add(line);
+			}
+		}
+		return echo;
+	}
+
+	private static final int STATEMENTS = 2000;
+	private static final String NOTE = "x".repeat(600); // 2000 of these are past CodeBuffer.SPILL_SIZE
+}
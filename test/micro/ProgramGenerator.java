@@ -0,0 +1,444 @@
+package micro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// ------------------------------ ProgramGenerator ----------------------------
+// Random MicroGCL programs and the output they must print. Each program is built
+// as a small tree that prints its own source and runs itself with SAM's 16-bit
+// arithmetic, so the expected output does not come from the compiler under test.
+// Programs read, assign, write, branch through IFs (half of them on literals, so
+// they dispatch) and loop through DOs whose counters only climb toward a bound,
+// so every program ends. Divisors are never zero, though not always visibly so.
+final class ProgramGenerator {
+	ProgramGenerator(final long seed) {
+		random = new Random(seed);
+		for (int i = 0; i < INPUTS; ++i) {
+			inputs[i] = random.nextInt(121) - 60;
+			input.append(inputs[i]).append(i % 20 == 19 ? '\n' : ' ');
+		}
+		for (String name : VARIABLES) {
+			pool.add(name);
+		}
+		List<Statement> program = new ArrayList<Statement>();
+		program.add(new Read(VARIABLES));
+		program.addAll(statements(5 + random.nextInt(21), 0, 0));
+		StringBuilder text = new StringBuilder("BEGIN\n");
+		for (Statement statement : program) {
+			statement.text(text, "  ");
+		}
+		source = text.append("END.\n").toString();
+		Run run = new Run();
+		for (Statement statement : program) {
+			statement.run(run);
+		}
+		output = run.output.toString();
+	}
+
+	String source() {
+		return source;
+	}
+
+	String input() { // Whitespace separated, for SamMachine.integers
+		return input.toString();
+	}
+
+	String output() { // Each WRITE value followed by a blank, each WRITE ended by a newline
+		return output;
+	}
+
+	// ------------------------------ generation ----------------------------
+
+	private List<Statement> statements(final int count, final int depth, final int loops) {
+		List<Statement> statements = new ArrayList<Statement>();
+		for (int i = 0; i < count; ++i) {
+			double r = random.nextDouble();
+			if (r < 0.2 && loops < COUNTERS.length) {
+				statements.add(loop(depth, loops));
+			} else if (r < 0.45) {
+				statements.add(new Assign(variable(), expression(random.nextInt(4))));
+			} else if (r < 0.65) {
+				List<Expression> items = new ArrayList<Expression>();
+				for (int n = 1 + random.nextInt(3); n > 0; --n) {
+					items.add(expression(random.nextInt(3)));
+				}
+				statements.add(new Write(items));
+			} else if (r < 0.75 && loops == 0) { // Never in a loop, so the input lasts
+				String first = variable(), second = variable();
+				statements.add(new Read(random.nextBoolean() || first.equals(second)
+					? new String[] { first } : new String[] { first, second }));
+			} else if (r < 0.9 && depth < 3) {
+				statements.add(choice(depth, loops));
+			} else {
+				statements.add(new Skip());
+			}
+		}
+		return statements;
+	}
+
+	private Statement loop(final int depth, final int loops) {
+		String counter = COUNTERS[loops];
+		int start = random.nextInt(4) - 2;
+		pool.add(counter);
+		Do loop = new Do(counter, start);
+		for (int n = ARMS[random.nextInt(ARMS.length)]; n > 0; --n) {
+			Expression bound = literal(start + random.nextInt(6 - start));
+			String operator = UPPER_BOUNDS[random.nextInt(UPPER_BOUNDS.length)];
+			Guard guard = operator.startsWith("<")
+				? new Guard(new Variable(counter), operator, bound)
+				: new Guard(bound, operator, new Variable(counter));
+			loop.arms.add(new Arm(guard, statements(1 + random.nextInt(3), depth + 1, loops + 1)));
+			loop.steps.add(1 + random.nextInt(2));
+		}
+		pool.remove(counter);
+		return loop;
+	}
+
+	private Statement choice(final int depth, final int loops) {
+		If choice = new If();
+		if (random.nextBoolean()) { // A dispatch on one variable
+			String name = variable();
+			for (int n = 1 + random.nextInt(7); n > 0; --n) {
+				Expression value = literal(random.nextInt(11) - 4);
+				Guard guard = random.nextDouble() < 0.85
+					? new Guard(new Variable(name), "=", value)
+					: new Guard(value, "=", new Variable(name));
+				choice.arms.add(new Arm(guard, statements(1 + random.nextInt(2), depth + 1, loops)));
+			}
+		} else {
+			for (int n = 1 + random.nextInt(4); n > 0; --n) {
+				Guard guard = new Guard(expression(random.nextInt(3) / 2),
+					RELATIONS[random.nextInt(RELATIONS.length)], expression(random.nextInt(3) / 2));
+				choice.arms.add(new Arm(guard, statements(1 + random.nextInt(2), depth + 1, loops)));
+			}
+		}
+		if (random.nextDouble() < 0.6) {
+			choice.otherwise = statements(1 + random.nextInt(2), depth + 1, loops);
+		}
+		return choice;
+	}
+
+	private Expression expression(final int depth) {
+		if (depth == 0 || random.nextDouble() < 0.15) {
+			if (random.nextBoolean()) {
+				return new Variable(pool.get(random.nextInt(pool.size())));
+			}
+			int literal = LITERALS[random.nextInt(LITERALS.length)];
+			return new Literal(literal < 0 ? random.nextInt(301) : literal);
+		}
+		char operator = "+-*/".charAt(random.nextInt(4));
+		Expression left = expression(depth - 1);
+		if (operator != '/') {
+			return new Binary(operator, left, expression(depth - 1));
+		}
+		Literal divisor = new Literal(DIVISORS[random.nextInt(DIVISORS.length)]);
+		if (random.nextBoolean()) {
+			return new Binary('/', left, divisor);
+		}
+		Expression zero = new Binary('*', expression(depth - 1), new Literal(0));
+		return new Binary('/', left, new Binary('+', zero, divisor));
+	}
+
+	private Expression literal(final int value) { // MicroGCL has no negative literals
+		return value >= 0 ? new Literal(value) : new Binary('-', new Literal(0), new Literal(-value));
+	}
+
+	private String variable() {
+		return VARIABLES[random.nextInt(VARIABLES.length)];
+	}
+
+	// ------------------------------ the program tree ----------------------------
+
+	private final class Run {
+		int value(final String name) {
+			return values[index(name)];
+		}
+
+		void assign(final String name, final int value) {
+			values[index(name)] = (short) value;
+		}
+
+		private int index(final String name) {
+			for (int i = 0; i < VARIABLES.length; ++i) {
+				if (VARIABLES[i].equals(name)) return i;
+			}
+			for (int i = 0; i < COUNTERS.length; ++i) {
+				if (COUNTERS[i].equals(name)) return VARIABLES.length + i;
+			}
+			throw new IllegalArgumentException(name);
+		}
+
+		final int[] values = new int[VARIABLES.length + COUNTERS.length];
+		final StringBuilder output = new StringBuilder();
+		int read;
+	}
+
+	private abstract static class Expression {
+		abstract String text();
+
+		abstract int value(Run run);
+	}
+
+	private static final class Variable extends Expression {
+		Variable(final String name) {
+			this.name = name;
+		}
+
+		String text() {
+			return name;
+		}
+
+		int value(final Run run) {
+			return run.value(name);
+		}
+
+		private final String name;
+	}
+
+	private static final class Literal extends Expression {
+		Literal(final int value) {
+			this.value = value;
+		}
+
+		String text() {
+			return Integer.toString(value);
+		}
+
+		int value(final Run run) {
+			return (short) value;
+		}
+
+		private final int value;
+	}
+
+	private static final class Binary extends Expression {
+		Binary(final char operator, final Expression left, final Expression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		String text() {
+			return "(" + left.text() + " " + operator + " " + right.text() + ")";
+		}
+
+		int value(final Run run) {
+			int a = left.value(run), b = right.value(run);
+			switch (operator) {
+			case '+': return (short) (a + b);
+			case '-': return (short) (a - b);
+			case '*': return (short) (a * b);
+			default: return (short) (a / b); // Truncates toward zero, as ID does
+			}
+		}
+
+		private final char operator;
+		private final Expression left, right;
+	}
+
+	private static final class Guard {
+		Guard(final Expression left, final String relation, final Expression right) {
+			this.left = left;
+			this.relation = relation;
+			this.right = right;
+		}
+
+		String text() {
+			return left.text() + " " + relation + " " + right.text();
+		}
+
+		boolean holds(final Run run) {
+			int compared = Integer.compare(left.value(run), right.value(run));
+			switch (relation) {
+			case "=": return compared == 0;
+			case "#": return compared != 0;
+			case "<": return compared < 0;
+			case "<=": return compared <= 0;
+			case ">": return compared > 0;
+			default: return compared >= 0;
+			}
+		}
+
+		private final Expression left, right;
+		private final String relation;
+	}
+
+	private static final class Arm {
+		Arm(final Guard guard, final List<Statement> body) {
+			this.guard = guard;
+			this.body = body;
+		}
+
+		final Guard guard;
+		final List<Statement> body;
+	}
+
+	private abstract static class Statement {
+		abstract void text(StringBuilder text, String indent);
+
+		abstract void run(Run run);
+
+		static void text(final List<Statement> statements, final StringBuilder text, final String indent) {
+			for (Statement statement : statements) {
+				statement.text(text, indent);
+			}
+		}
+
+		static void run(final List<Statement> statements, final Run run) {
+			for (Statement statement : statements) {
+				statement.run(run);
+			}
+		}
+	}
+
+	private static final class Assign extends Statement {
+		Assign(final String name, final Expression value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		void text(final StringBuilder text, final String indent) {
+			text.append(indent).append(name).append(" := ").append(value.text()).append(";\n");
+		}
+
+		void run(final Run run) {
+			run.assign(name, value.value(run));
+		}
+
+		private final String name;
+		private final Expression value;
+	}
+
+	private static final class Write extends Statement {
+		Write(final List<Expression> items) {
+			this.items = items;
+		}
+
+		void text(final StringBuilder text, final String indent) {
+			text.append(indent).append("WRITE ");
+			for (int i = 0; i < items.size(); ++i) {
+				text.append(i == 0 ? "" : ", ").append(items.get(i).text());
+			}
+			text.append(";\n");
+		}
+
+		void run(final Run run) {
+			for (Expression item : items) {
+				run.output.append(item.value(run)).append(' ');
+			}
+			run.output.append('\n');
+		}
+
+		private final List<Expression> items;
+	}
+
+	private final class Read extends Statement {
+		Read(final String[] names) {
+			this.names = names;
+		}
+
+		void text(final StringBuilder text, final String indent) {
+			text.append(indent).append("READ ").append(String.join(", ", names)).append(";\n");
+		}
+
+		void run(final Run run) {
+			for (String name : names) {
+				run.assign(name, inputs[run.read++]);
+			}
+		}
+
+		private final String[] names;
+	}
+
+	private static final class Skip extends Statement {
+		void text(final StringBuilder text, final String indent) {
+			text.append(indent).append("SKIP;\n");
+		}
+
+		void run(final Run run) {
+		}
+	}
+
+	private static final class If extends Statement {
+		void text(final StringBuilder text, final String indent) {
+			for (int i = 0; i < arms.size(); ++i) {
+				text.append(indent).append(i == 0 ? "IF " : "[] ").append(arms.get(i).guard.text()).append(" ->\n");
+				text(arms.get(i).body, text, indent + "  ");
+			}
+			if (otherwise != null) {
+				text.append(indent).append("[]\n");
+				text(otherwise, text, indent + "  ");
+			}
+			text.append(indent).append("FI;\n");
+		}
+
+		void run(final Run run) {
+			for (Arm arm : arms) {
+				if (arm.guard.holds(run)) {
+					run(arm.body, run);
+					return;
+				}
+			}
+			if (otherwise != null) {
+				run(otherwise, run);
+			}
+		}
+
+		final List<Arm> arms = new ArrayList<Arm>();
+		List<Statement> otherwise;
+	}
+
+	private static final class Do extends Statement {
+		Do(final String counter, final int start) {
+			this.counter = counter;
+			this.start = start;
+		}
+
+		void text(final StringBuilder text, final String indent) {
+			text.append(indent).append(counter).append(" := ")
+				.append(start >= 0 ? Integer.toString(start) : "0 - " + -start).append(";\n");
+			for (int i = 0; i < arms.size(); ++i) {
+				text.append(indent).append(i == 0 ? "DO " : "[] ").append(arms.get(i).guard.text()).append(" ->\n");
+				text(arms.get(i).body, text, indent + "  ");
+				text.append(indent).append("  ").append(counter).append(" := ").append(counter)
+					.append(" + ").append(steps.get(i)).append(";\n");
+			}
+			text.append(indent).append("OD;\n");
+		}
+
+		void run(final Run run) {
+			run.assign(counter, start);
+			search: while (true) {
+				for (int i = 0; i < arms.size(); ++i) {
+					if (arms.get(i).guard.holds(run)) {
+						run(arms.get(i).body, run);
+						run.assign(counter, run.value(counter) + steps.get(i));
+						continue search;
+					}
+				}
+				return;
+			}
+		}
+
+		private final String counter;
+		private final int start;
+		final List<Arm> arms = new ArrayList<Arm>();
+		final List<Integer> steps = new ArrayList<Integer>();
+	}
+
+	private static final String[] VARIABLES = { "a", "b", "c", "d", "x", "y" };
+	private static final String[] COUNTERS = { "i", "j", "k" }; // One per loop depth
+	private static final String[] RELATIONS = { "=", "#", "<", "<=", ">", ">=" };
+	private static final String[] UPPER_BOUNDS = { "<", "<=", ">", ">=" };
+	private static final int[] ARMS = { 1, 1, 1, 2, 3 };
+	private static final int[] LITERALS = { 0, 1, 2, 3, 7, 20, 100, 40000, -1 }; // -1: any of 0..300
+	private static final int[] DIVISORS = { 1, 2, 3, 5, 7 };
+	private static final int INPUTS = 200;
+
+	private final Random random;
+	private final List<String> pool = new ArrayList<String>(); // Variables expressions may use
+	private final StringBuilder input = new StringBuilder();
+	private final int[] inputs = new int[INPUTS];
+	private final String source, output;
+}
@@ -0,0 +1,37 @@
+package micro;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+// ------------------------------ ProgramsTest ----------------------------
+// The programs in test/programs, each name.gcl run on name.in and checked
+// against name.out. Each targets a corner of the code generator or of a pass.
+class ProgramsTest {
+	@Test
+	void programsPrintTheirExpectedOutput() throws IOException {
+		int programs = 0;
+		try (DirectoryStream<Path> sources = Files.newDirectoryStream(PROGRAMS, "*.gcl")) {
+			for (Path source : sources) {
+				String name = source.getFileName().toString().replaceFirst("\\.gcl$", "");
+				Execution.check(name, read(source), read(source.resolveSibling(name + ".in")),
+					read(source.resolveSibling(name + ".out")));
+				programs++;
+			}
+		}
+		assertFalse(programs == 0, "No programs in " + PROGRAMS.toAbsolutePath());
+	}
+
+	private static String read(final Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+	}
+
+	private static final Path PROGRAMS = Paths.get("test", "programs");
+}
@@ -0,0 +1,75 @@
+package micro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+// ------------------------------ RunOffTest ----------------------------
+// SAM code that jumps to a label after its last instruction. The interpreter
+// stops with an error there, and so must the code translated with -jvm, from
+// the last chunk or from an earlier one.
+class RunOffTest {
+	@Test
+	void jumpToTheEnd() {
+		check(Arrays.asList("WRI #7", "JMP L1", "HALT", "LABEL L1"));
+	}
+
+	@Test
+	void branchToTheEnd() {
+		check(Arrays.asList("LD R0, #1", "IC R0, #0", "JGT L1", "HALT", "LABEL L1"));
+	}
+
+	@Test
+	void jumpToTheEndOfAFullChunk() {
+		check(program(SamCompiler.CHUNK_SIZE));
+	}
+
+	@Test
+	void jumpToTheEndFromAnEarlierChunk() {
+		check(program(SamCompiler.CHUNK_SIZE + 3));
+	}
+
+	// A jump past instructions - 1 HALTs.
+	private static List<String> program(final int instructions) {
+		List<String> lines = new ArrayList<String>();
+		lines.add("JMP L1");
+		for (int i = 1; i < instructions; ++i) {
+			lines.add("HALT");
+		}
+		lines.add("LABEL L1");
+		return lines;
+	}
+
+	private static void check(final List<String> lines) {
+		final SamMachine machine = new SamMachine(lines);
+		final StringWriter interpreted = new StringWriter();
+		final StringWriter translated = new StringWriter();
+		assertThrows(SamError.class, new Executable() {
+			public void execute() {
+				machine.run(SamMachine.integers(new StringReader("")), new PrintWriter(interpreted));
+			}
+		});
+		assertTimeoutPreemptively(Duration.ofSeconds(10), new Executable() { // It used to loop forever.
+			public void execute() {
+				SamError error = assertThrows(SamError.class, new Executable() {
+					public void execute() {
+						machine.translate().run(SamMachine.integers(new StringReader("")), new PrintWriter(translated));
+					}
+				});
+				assertEquals("Ran past the end of the code", error.getMessage());
+			}
+		});
+		assertEquals(interpreted.toString(), translated.toString());
+	}
+}
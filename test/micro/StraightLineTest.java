@@ -0,0 +1,25 @@
+package micro;
+
+import org.junit.jupiter.api.Test;
+
+// ------------------------------ StraightLineTest ----------------------------
+// Code without labels long enough that -O's value numbering starts again on
+// the way, with values cached in registers when it does.
+class StraightLineTest {
+	@Test
+	void valuesKnownAcrossLongCode() {
+		StringBuilder source = new StringBuilder("BEGIN\n  READ a, b;\n");
+		short a = 5;
+		short b = 3;
+		for (int i = 0; i < STATEMENTS; ++i) { // Five new values each
+			int literal = i % 1000;
+			source.append("  a := a + ").append(literal).append(" * b - (a - ").append(literal).append(") / 3;\n");
+			a = (short) ((short) (a + (short) (literal * b)) - (short) ((short) (a - literal) / 3));
+		}
+		source.append("  WRITE a * b, a * b, a;\nEND.\n");
+		short product = (short) (a * b);
+		Execution.check("straight line", source.toString(), "5 3", product + " " + product + " " + a + " \n");
+	}
+
+	private static final int STATEMENTS = 20000;
+}